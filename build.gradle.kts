@@ -1,5 +1,6 @@
 plugins {
     id("fpgradle-minecraft") version ("0.10.0")
+    id("me.champeau.jmh") version ("0.7.2")
 }
 
 group = "makamys"
@@ -52,4 +53,17 @@ dependencies {
     compileOnly("com.falsepattern:falsetweaks-mc1.7.10:3.8.3:dev")
 
     compileOnly("optifine:optifine:1.7.10_hd_u_e7:dev")
-}
\ No newline at end of file
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+// Benchmarks live in src/jmh, run them with ./gradlew jmh. They can use the test fixtures, e.g. to set up a renderer.
+jmh {
+    jmhVersion = "1.37"
+    includeTests = true
+}
@@ -0,0 +1,158 @@
+package makamys.neodymium.renderer;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.opengl.GL11;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import makamys.neodymium.Neodymium;
+import makamys.neodymium.config.Config;
+import makamys.neodymium.renderer.compat.RenderUtilVanilla;
+import net.minecraft.client.renderer.WorldRenderer;
+
+/**
+ * Rebuilds every draw list of a synthetic world, like after the camera entered another chunk, on a fork-join pool of
+ * {@code parallelism} threads, or on the calling thread if it's 1. The world is centered on a region corner, so it's
+ * split across four regions per pass. Some meshes are out of the frustum, and fog hides the ones in the corners.
+ * <p>
+ * The renderer can't be constructed outside the game, so it's set up by {@link CaptureHarness} like in the tests, and
+ * the meshes are created without running their constructors. They only get the fields that building draw lists reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawListBenchmark {
+    /** The width of the world in chunks. */
+    @Param({"40"})
+    public int chunks;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private CaptureHarness.SavedState savedState;
+    private NeoRenderer renderer;
+    private ForkJoinPool pool;
+    private final List<NeoRegion.RenderData> regions = new ArrayList<>();
+    private final List<GPUMemoryManager> regionManagers = new ArrayList<>();
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        savedState = CaptureHarness.saveState();
+        Config.cullFaces = true;
+        Config.maxMeshesPerFrame = -1;
+        Config.maxUnalignedPolygonDistance = Integer.MAX_VALUE;
+        Config.renderFog = Config.AutomatableBoolean.TRUE;
+
+        new CaptureHarness().use(RenderUtilVanilla.INSTANCE);
+        renderer = Neodymium.renderer;
+        // The fog ends a bit before the corners of the world
+        float fogEnd = (chunks / 2 - 2) * 16;
+        renderer.fogStartEnd = FloatBuffer.wrap(new float[]{fogEnd * 0.75f, fogEnd});
+        renderer.setEyePos(8, 80, 8, 0, 0, 0);
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        // The sub-meshes are indexed by the normal order, which has every normal in it
+        int normals = PolygonNormal.values().length;
+
+        Random random = new Random(1);
+        for (int pass = 0; pass < 2; pass++) {
+            GPUMemoryManager mem = new GPUMemoryManager(pass, pass, GL11.GL_QUADS, 4, 0);
+            NeoRegion.RenderData[][] passRegions = new NeoRegion.RenderData[2][2];
+            int iFirst = 0;
+            for (int x = -chunks / 2; x < chunks / 2; x++) {
+                for (int z = -chunks / 2; z < chunks / 2; z++) {
+                    for (int y = 0; y < 16; y++) {
+                        // Terrain down low, with fewer meshes further up, and water in a few of them
+                        boolean hasMesh = pass == 0 ? y < 4 || random.nextInt(y) < 2 : y == 3 && random.nextInt(4) == 0;
+                        if (!hasMesh) continue;
+
+                        int rx = x < 0 ? 0 : 1;
+                        int rz = z < 0 ? 0 : 1;
+                        if (passRegions[rx][rz] == null) {
+                            passRegions[rx][rz] = new NeoRegion.RenderData((rx - 1) * NeoRegion.SIZE * 16, 0, (rz - 1) * NeoRegion.SIZE * 16);
+                        }
+                        ChunkMesh mesh = mesh(random, x, y, z, pass, normals);
+                        mesh.iFirst = iFirst;
+                        iFirst += mesh.polygonCount * 4;
+                        passRegions[rx][rz].addMesh(mesh);
+                    }
+                }
+            }
+            for (NeoRegion.RenderData[] row : passRegions) {
+                for (NeoRegion.RenderData region : row) {
+                    region.sort(8, 80, 8, pass == 0, pass == 1);
+                    regions.add(region);
+                    regionManagers.add(mem);
+                }
+            }
+        }
+    }
+
+    private static ChunkMesh mesh(Random random, int x, int y, int z, int pass, int normals) throws ReflectiveOperationException {
+        WorldRenderer wr = Uninitialized.allocate(WorldRenderer.class);
+        wr.isVisible = true;
+        // Roughly what's behind the camera with a 90 degree field of view
+        wr.isInFrustum = random.nextInt(3) != 0;
+
+        ChunkMesh mesh = Uninitialized.allocate(ChunkMesh.class);
+        mesh.wr = wr;
+        mesh.x = x;
+        mesh.y = y;
+        mesh.z = z;
+        mesh.pass = pass;
+        mesh.visible = true;
+        mesh.drawMode = GL11.GL_QUADS;
+        mesh.verticesPerPolygon = 4;
+
+        // Some polygons for each of the six axis-aligned normals, which come right after NONE in the normal order
+        int[] subMeshStart = new int[normals];
+        int polygons = 0;
+        for (int i = 0; i < normals; i++) {
+            boolean present = i >= 1 && i <= 6 && random.nextInt(4) != 0;
+            subMeshStart[i] = present ? polygons : -1;
+            polygons += present ? 1 + random.nextInt(200) : 0;
+        }
+        mesh.polygonCount = polygons;
+        mesh.subMeshStart = subMeshStart;
+        return mesh;
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        savedState.restore();
+    }
+
+    @Benchmark
+    public int rebuildAll() {
+        renderer.buildDrawLists(regions, regionManagers, pool);
+        int drawn = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            drawn += regions.get(i).drawnPolygons;
+        }
+        return drawn;
+    }
+}
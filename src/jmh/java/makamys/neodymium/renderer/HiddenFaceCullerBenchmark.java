@@ -0,0 +1,204 @@
+package makamys.neodymium.renderer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gnu.trove.list.array.TIntArrayList;
+import makamys.neodymium.Neodymium;
+import makamys.neodymium.renderer.compat.RenderUtilVanilla;
+
+/**
+ * Culls a synthetic chunk packed with mod blocks that don't cull their faces against each other, with crops, rails and
+ * vines mixed in, which draw planes inside their block that are visible from both sides. The chunk is copied into the
+ * polygon buffer before each run, since culling compacts it. {@link #copyOnly} measures that copy on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HiddenFaceCullerBenchmark {
+    private static final int BLOCK = 0, CROPS = 1, RAIL = 2, VINE = 3, AIR = 4;
+
+    /** The fraction of positions that hold a full mod block, the rest is split between the others and air. */
+    @Param({"0.5", "0.9"})
+    public double density;
+
+    /** 1 for indexed quads, 2 for quads split into triangles. */
+    @Param({"1", "2"})
+    public int polygonsPerQuad;
+
+    private final ChunkMesh.PolygonMeshBuffer buf = new ChunkMesh.PolygonMeshBuffer();
+    private int[] chunkData;
+    private int chunkSize;
+    private int[] quadStarts;
+    private int[] quadBlocks;
+    private int vertexSize;
+    private int polygonSize;
+    private int expectedRemoved;
+
+    @Setup
+    public void setup() {
+        Neodymium.util = RenderUtilVanilla.INSTANCE;
+        vertexSize = Neodymium.util.vertexSizeInPolygonBuffer();
+        polygonSize = Neodymium.util.polygonSize(polygonsPerQuad == 1 ? 4 : 3);
+
+        Random random = new Random(1);
+        int[][][] kinds = new int[16][16][16];
+        for (int[][] plane : kinds) {
+            for (int[] row : plane) {
+                for (int i = 0; i < row.length; i++) {
+                    double r = random.nextDouble();
+                    row[i] = r < density ? BLOCK : BLOCK + 1 + (int) ((r - density) / (1 - density) * 4);
+                }
+            }
+        }
+
+        QuadWriter writer = new QuadWriter();
+        int block = 0;
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    switch (kinds[x][y][z]) {
+                        case BLOCK:
+                            writer.box(block, x, y, z, x + 1, y + 1, z + 1);
+                            expectedRemoved += countBlockNeighbours(kinds, x, y, z);
+                            break;
+                        case CROPS:
+                            writer.doubleSided(block, PolygonNormal.POSITIVE_X, x + 0.25f, y, z, y + 1, z + 1);
+                            writer.doubleSided(block, PolygonNormal.POSITIVE_X, x + 0.75f, y, z, y + 1, z + 1);
+                            break;
+                        case RAIL:
+                            writer.doubleSided(block, PolygonNormal.POSITIVE_Y, y + 0.0625f, x, z, x + 1, z + 1);
+                            break;
+                        case VINE:
+                            // Lies on the boundary, but both sides come from the same block. Only the side facing a
+                            // block gets culled, along with the face of that block.
+                            writer.doubleSided(block, PolygonNormal.POSITIVE_Z, z, x, y, x + 1, y + 1);
+                            expectedRemoved += z > 0 && kinds[x][y][z - 1] == BLOCK ? 2 : 0;
+                            break;
+                    }
+                    if (kinds[x][y][z] != AIR) {
+                        block++;
+                    }
+                }
+            }
+        }
+        chunkData = Arrays.copyOf(writer.data, writer.size);
+        chunkSize = writer.size;
+        quadStarts = writer.starts.toArray();
+        quadBlocks = writer.blocks.toArray();
+        // Split quads are removed as two triangles
+        expectedRemoved *= polygonsPerQuad;
+
+        int removed = cull();
+        if (removed != expectedRemoved) {
+            throw new IllegalStateException("Culled " + removed + " polygons, expected " + expectedRemoved);
+        }
+    }
+
+    private static int countBlockNeighbours(int[][][] kinds, int x, int y, int z) {
+        int n = 0;
+        n += x < 15 && kinds[x + 1][y][z] == BLOCK ? 2 : 0;
+        n += y < 15 && kinds[x][y + 1][z] == BLOCK ? 2 : 0;
+        n += z < 15 && kinds[x][y][z + 1] == BLOCK ? 2 : 0;
+        return n;
+    }
+
+    private void copyChunk() {
+        buf.reset();
+        buf.ensureCapacity(chunkSize);
+        System.arraycopy(chunkData, 0, buf.data, 0, chunkSize);
+        buf.size = chunkSize;
+        buf.quadStarts.add(quadStarts);
+        buf.quadBlocks.add(quadBlocks);
+    }
+
+    @Benchmark
+    public int copyOnly() {
+        copyChunk();
+        return buf.size;
+    }
+
+    @Benchmark
+    public int cull() {
+        copyChunk();
+        return HiddenFaceCuller.cull(buf, polygonSize, polygonsPerQuad);
+    }
+
+    /** Writes quads in the layout of the polygon buffer. Only the positions and the normal matter to the culler. */
+    private class QuadWriter {
+        int[] data = new int[1024];
+        int size;
+        final TIntArrayList starts = new TIntArrayList();
+        final TIntArrayList blocks = new TIntArrayList();
+
+        void box(int block, float x0, float y0, float z0, float x1, float y1, float z1) {
+            quad(block, PolygonNormal.NEGATIVE_X, x0, y0, z0, x0, y0, z1, x0, y1, z1, x0, y1, z0);
+            quad(block, PolygonNormal.POSITIVE_X, x1, y0, z0, x1, y1, z0, x1, y1, z1, x1, y0, z1);
+            quad(block, PolygonNormal.NEGATIVE_Y, x0, y0, z0, x1, y0, z0, x1, y0, z1, x0, y0, z1);
+            quad(block, PolygonNormal.POSITIVE_Y, x0, y1, z0, x0, y1, z1, x1, y1, z1, x1, y1, z0);
+            quad(block, PolygonNormal.NEGATIVE_Z, x0, y0, z0, x0, y1, z0, x1, y1, z0, x1, y0, z0);
+            quad(block, PolygonNormal.POSITIVE_Z, x0, y0, z1, x1, y0, z1, x1, y1, z1, x0, y1, z1);
+        }
+
+        /** A plane at {@code d} on the normal's axis, spanning (u0, v0) to (u1, v1) on the other two, drawn from both sides. */
+        void doubleSided(int block, PolygonNormal normal, float d, float u0, float v0, float u1, float v1) {
+            float[][] corners = new float[4][];
+            float[][] uv = {{u0, v0}, {u1, v0}, {u1, v1}, {u0, v1}};
+            for (int i = 0; i < 4; i++) {
+                float u = uv[i][0], v = uv[i][1];
+                corners[i] = normal.signX != 0 ? new float[]{d, u, v} : normal.signY != 0 ? new float[]{u, d, v} : new float[]{u, v, d};
+            }
+            PolygonNormal opposite = normal == PolygonNormal.POSITIVE_X ? PolygonNormal.NEGATIVE_X
+                                   : normal == PolygonNormal.POSITIVE_Y ? PolygonNormal.NEGATIVE_Y : PolygonNormal.NEGATIVE_Z;
+            quad(block, normal, corners[0], corners[1], corners[2], corners[3]);
+            quad(block, opposite, corners[3], corners[2], corners[1], corners[0]);
+        }
+
+        private void quad(int block, PolygonNormal normal, float... xyz) {
+            quad(block, normal, Arrays.copyOfRange(xyz, 0, 3), Arrays.copyOfRange(xyz, 3, 6),
+                 Arrays.copyOfRange(xyz, 6, 9), Arrays.copyOfRange(xyz, 9, 12));
+        }
+
+        private void quad(int block, PolygonNormal normal, float[] a, float[] b, float[] c, float[] d) {
+            if (size + 2 * polygonSize > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            starts.add(size);
+            // The mod blocks are full, opaque cubes
+            blocks.add(HiddenFaceCuller.blockKey(block, true));
+            if (polygonsPerQuad == 1) {
+                polygon(normal, a, b, c, d);
+            } else {
+                // Same split as MeshPolygon.processPolygon
+                polygon(normal, a, b, c);
+                polygon(normal, d, a, c);
+            }
+        }
+
+        private void polygon(PolygonNormal normal, float[]... vertices) {
+            for (float[] vertex : vertices) {
+                data[size] = Float.floatToRawIntBits(vertex[0]);
+                data[size + 1] = Float.floatToRawIntBits(vertex[1]);
+                data[size + 2] = Float.floatToRawIntBits(vertex[2]);
+                size += vertexSize;
+            }
+            data[size++] = normal.ordinal();
+        }
+    }
+}
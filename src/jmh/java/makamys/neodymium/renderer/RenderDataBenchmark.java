@@ -0,0 +1,112 @@
+package makamys.neodymium.renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One frame's worth of mesh churn in a region holding 10k meshes: {@code churn} meshes get removed and sent again,
+ * like after a burst of block updates, and the mesh list is read back in draw order. {@link #listRemove} does the same
+ * with {@link List#remove(Object)}, which is how meshes were removed before they had slots. {@link #sort} measures
+ * sorting the list for a moving eye.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderDataBenchmark {
+    private static final int MESHES = 10_000;
+
+    /** The number of meshes replaced per frame. */
+    @Param({"1", "16", "256"})
+    public int churn;
+
+    private NeoRegion.RenderData renderData;
+    private List<Mesh> list;
+    private Mesh[] replaced;
+    private int[] picks;
+    private int nextPick;
+    private int frame;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        renderData = new NeoRegion.RenderData(0, 0, 0);
+        list = new ArrayList<>();
+        for (int i = 0; i < MESHES; i++) {
+            Mesh mesh = new Mesh() {};
+            mesh.x = random.nextInt(NeoRegion.SIZE);
+            mesh.y = random.nextInt(16);
+            mesh.z = random.nextInt(NeoRegion.SIZE);
+            mesh.pass = random.nextInt(4) == 0 ? 1 : 0;
+            renderData.addMesh(mesh);
+            list.add(mesh);
+        }
+        // Keep the draw order of the game, where the list is sorted by distance from the eye
+        renderData.sort(32 * 16, 64, 32 * 16, true, false);
+        list.sort(Comparators.MESH_DISTANCE_COMPARATOR.setOrigin(32 * 16, 64, 32 * 16).setInverted(false));
+
+        replaced = new Mesh[churn];
+        picks = new int[4096];
+        for (int i = 0; i < picks.length; i++) {
+            picks[i] = random.nextInt(MESHES);
+        }
+    }
+
+    private int nextPick() {
+        nextPick = (nextPick + 1) % picks.length;
+        return picks[nextPick];
+    }
+
+    @Benchmark
+    public int renderData() {
+        List<Mesh> sent = renderData.getSentMeshes();
+        for (int i = 0; i < churn; i++) {
+            // Picks may repeat and land on a slot that was emptied this frame, removing a mesh twice is a no-op
+            Mesh mesh = sent.get(nextPick());
+            if (mesh != null) {
+                renderData.removeMesh(mesh);
+            }
+            replaced[i] = mesh;
+        }
+        for (int i = 0; i < churn; i++) {
+            if (replaced[i] != null && replaced[i].regionSlot == -1) {
+                renderData.addMesh(replaced[i]);
+            }
+        }
+        return renderData.getSentMeshes().size();
+    }
+
+    @Benchmark
+    public int listRemove() {
+        for (int i = 0; i < churn; i++) {
+            Mesh mesh = list.get(nextPick());
+            list.remove(mesh);
+            list.add(mesh);
+        }
+        return list.size();
+    }
+
+    @Benchmark
+    public int sort() {
+        // Circle the middle of the region, so each sort starts from a slightly different order
+        double angle = ++frame * 0.01;
+        renderData.sort(32 * 16 + Math.cos(angle) * 256, 64, 32 * 16 + Math.sin(angle) * 256, true, false);
+        return renderData.getSentMeshes().size();
+    }
+}
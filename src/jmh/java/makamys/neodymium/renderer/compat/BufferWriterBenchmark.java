@@ -0,0 +1,235 @@
+package makamys.neodymium.renderer.compat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import makamys.neodymium.config.Config;
+import makamys.neodymium.renderer.attribs.AttributeSet;
+import makamys.neodymium.util.BulkBufferWriter;
+
+/**
+ * Writes the polygon buffer of a dense chunk into a mesh buffer, once with {@link BulkBufferWriter} and the current
+ * writers of each vertex layout, and once with the writer and the per-scalar layout code it replaced. Throughput is
+ * reported in mesh bytes written per second by the {@code bytes} counter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferWriterBenchmark {
+    private static final int QUADS = 8192;
+    private static final int VERTICES_PER_POLYGON = 4;
+
+    /** A {@link RenderUtil}, with ShortUV meaning the same util with {@link Config#shortUV} enabled. */
+    @Param({"Vanilla", "VanillaShortUV", "VanillaCompact", "RPLE", "RPLEShortUV", "RPLECompact", "Shaders", "ShaderRPLE"})
+    public String layout;
+
+    private RenderUtil util;
+    private int[] polygons;
+    private int polygonSize;
+    private int stride;
+    private ByteBuffer buffer;
+    private BulkBufferWriter bulkWriter;
+    private LegacyBufferWriter legacyWriter;
+
+    @Setup
+    public void setup() {
+        Config.shortUV = layout.endsWith("ShortUV");
+        switch (layout.replace("ShortUV", "")) {
+            case "Vanilla": util = RenderUtilVanilla.INSTANCE; break;
+            case "VanillaCompact": util = RenderUtilVanillaCompact.INSTANCE; break;
+            case "RPLE": util = RenderUtilRPLE.INSTANCE; break;
+            case "RPLECompact": util = RenderUtilRPLECompact.INSTANCE; break;
+            case "Shaders": util = RenderUtilShaders.INSTANCE; break;
+            case "ShaderRPLE": util = RenderUtilShaderRPLE.INSTANCE; break;
+            default: throw new IllegalArgumentException(layout);
+        }
+        AttributeSet attributes = new AttributeSet();
+        util.initVertexAttributes(attributes);
+        stride = attributes.stride();
+
+        int vertexSize = util.vertexSizeInPolygonBuffer();
+        polygonSize = util.polygonSize(VERTICES_PER_POLYGON);
+        polygons = new int[QUADS * polygonSize];
+        Random random = new Random(1);
+        for (int i = 0; i < polygons.length; i++) {
+            int field = i % polygonSize % vertexSize;
+            // Positions within the region, texture coordinates within the atlas, anything for the rest
+            polygons[i] = field < 3 ? Float.floatToRawIntBits(random.nextFloat() * 256)
+                        : field < 5 ? Float.floatToRawIntBits(random.nextFloat())
+                        : random.nextInt();
+        }
+
+        buffer = ByteBuffer.allocateDirect(QUADS * VERTICES_PER_POLYGON * stride).order(ByteOrder.nativeOrder());
+        bulkWriter = new BulkBufferWriter(buffer);
+        legacyWriter = new LegacyBufferWriter(buffer);
+
+        Bytes bytes = new Bytes();
+        ByteBuffer expected = ByteBuffer.allocate(legacyWriter(bytes));
+        expected.put((ByteBuffer) buffer.flip());
+        int written = bulkWriter(bytes);
+        if (!((ByteBuffer) buffer.flip()).equals(expected.flip()) || written != buffer.capacity()) {
+            throw new IllegalStateException("The writers disagree on the " + layout + " layout");
+        }
+    }
+
+    @Benchmark
+    public int bulkWriter(Bytes bytes) {
+        bulkWriter.reset();
+        for (int offset = 0; offset < polygons.length; offset += polygonSize) {
+            util.writeMeshPolygonToBuffer(polygons, offset, bulkWriter, stride, VERTICES_PER_POLYGON);
+        }
+        bulkWriter.flush();
+        bytes.bytes += buffer.position();
+        return buffer.position();
+    }
+
+    @Benchmark
+    public int legacyWriter(Bytes bytes) {
+        legacyWriter.reset();
+        for (int offset = 0; offset < polygons.length; offset += polygonSize) {
+            writeLegacy(offset);
+        }
+        bytes.bytes += buffer.position();
+        return buffer.position();
+    }
+
+    /** The layout code as it was before {@link BulkBufferWriter}, down to the order of the writes. */
+    private void writeLegacy(int polygonOffset) {
+        int[] p = polygons;
+        LegacyBufferWriter out = legacyWriter;
+        int vertexSize = util.vertexSizeInPolygonBuffer();
+        for (int vi = 0; vi < VERTICES_PER_POLYGON; vi++) {
+            int offset = polygonOffset + vi * vertexSize;
+            if (util == RenderUtilShaders.INSTANCE || util == RenderUtilShaderRPLE.INSTANCE) {
+                for (int i = 0; i < vertexSize; i++) {
+                    out.writeInt(p[offset + i]);
+                }
+            } else if (util == RenderUtilVanillaCompact.INSTANCE) {
+                writeCompactPositionAndUV(p, offset, out, true);
+                out.writeInt(p[offset + RenderUtilVanilla.POLYGON_OFFSET_C]);
+            } else if (util == RenderUtilRPLECompact.INSTANCE) {
+                writeCompactPositionAndUV(p, offset, out, false);
+                out.writeInt(p[offset + RenderUtilRPLE.POLYGON_OFFSET_C]);
+                out.writeInt(p[offset + RenderUtilRPLE.POLYGON_OFFSET_BR]);
+                out.writeInt(p[offset + RenderUtilRPLE.POLYGON_OFFSET_BG]);
+                out.writeInt(p[offset + RenderUtilRPLE.POLYGON_OFFSET_BB]);
+            } else {
+                out.writeFloat(Float.intBitsToFloat(p[offset]));
+                out.writeFloat(Float.intBitsToFloat(p[offset + 1]));
+                out.writeFloat(Float.intBitsToFloat(p[offset + 2]));
+
+                float u = Float.intBitsToFloat(p[offset + RenderUtilVanilla.POLYGON_OFFSET_U]);
+                float v = Float.intBitsToFloat(p[offset + RenderUtilVanilla.POLYGON_OFFSET_V]);
+                if (Config.shortUV) {
+                    out.writeShort((short) (Math.round(u * 32768f)));
+                    out.writeShort((short) (Math.round(v * 32768f)));
+                } else {
+                    out.writeFloat(u);
+                    out.writeFloat(v);
+                }
+
+                // The color and the brightness fields come last in both layouts
+                for (int i = RenderUtilVanilla.POLYGON_OFFSET_C; i < vertexSize; i++) {
+                    out.writeInt(p[offset + i]);
+                }
+            }
+        }
+    }
+
+    /** The position, then two brightness bytes for vanilla or a padding short for RPLE, then the texture coordinates. */
+    private static void writeCompactPositionAndUV(int[] p, int offset, LegacyBufferWriter out, boolean brightness) {
+        for (int axis = 0; axis < 3; axis++) {
+            out.writeShort(RenderUtilVanillaCompact.encodePosition(Float.intBitsToFloat(p[offset + axis])));
+        }
+        if (brightness) {
+            int b = p[offset + RenderUtilVanilla.POLYGON_OFFSET_B];
+            out.writeByte((byte) b);
+            out.writeByte((byte) (b >>> 16));
+        } else {
+            out.writeShort((short) 0);
+        }
+        for (int i = 0; i < 2; i++) {
+            out.writeShort((short) Math.round(Float.intBitsToFloat(p[offset + RenderUtilVanilla.POLYGON_OFFSET_U + i]) * 32768f));
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            bytes = 0;
+        }
+    }
+
+    /** A copy of the writer {@link BulkBufferWriter} replaced, which keeps the position of four buffers in step. */
+    private static class LegacyBufferWriter {
+        private final ByteBuffer buf;
+        private final FloatBuffer floatBuffer;
+        private final ShortBuffer shortBuffer;
+        private final IntBuffer intBuffer;
+
+        LegacyBufferWriter(ByteBuffer buf) {
+            this.buf = buf;
+            this.floatBuffer = buf.asFloatBuffer();
+            this.shortBuffer = buf.asShortBuffer();
+            this.intBuffer = buf.asIntBuffer();
+        }
+
+        void reset() {
+            buf.clear();
+            incrementPosition(0);
+        }
+
+        private void incrementPosition(int add) {
+            buf.position(buf.position() + add);
+            floatBuffer.position(buf.position() / 4);
+            shortBuffer.position(buf.position() / 2);
+            intBuffer.position(buf.position() / 4);
+        }
+
+        void writeFloat(float x) {
+            floatBuffer.put(x);
+            incrementPosition(4);
+        }
+
+        void writeInt(int x) {
+            intBuffer.put(x);
+            incrementPosition(4);
+        }
+
+        void writeByte(byte x) {
+            buf.put(x);
+            incrementPosition(0);
+        }
+
+        void writeShort(short s) {
+            shortBuffer.put(s);
+            incrementPosition(2);
+        }
+    }
+}
@@ -29,6 +29,12 @@ public class Compat {
     
     private static boolean isGL33Supported;
     
+    private static boolean isMultiDrawIndirectSupported;
+    
+    private static boolean isBaseInstanceSupported;
+    
+    private static boolean isBufferStorageSupported;
+    
     private static boolean wasAdvancedOpenGLEnabled;
     
     private static boolean IS_RPLE_PRESENT;
@@ -45,6 +51,9 @@ public class Compat {
 
     public static void init() {
         isGL33Supported = GLContext.getCapabilities().OpenGL33;
+        isMultiDrawIndirectSupported = GLContext.getCapabilities().OpenGL43 || GLContext.getCapabilities().GL_ARB_multi_draw_indirect;
+        isBaseInstanceSupported = GLContext.getCapabilities().OpenGL42 || GLContext.getCapabilities().GL_ARB_base_instance;
+        isBufferStorageSupported = GLContext.getCapabilities().OpenGL44 || GLContext.getCapabilities().GL_ARB_buffer_storage;
         
         if (Loader.isModLoaded("rple")) {
             IS_RPLE_PRESENT = true;
@@ -133,6 +142,19 @@ public class Compat {
         return result;
     }
 
+    public static boolean isMultiDrawIndirectSupported() {
+        return isMultiDrawIndirectSupported;
+    }
+
+    /** Whether draw commands can offset instanced attributes with their baseInstance field. */
+    public static boolean isBaseInstanceSupported() {
+        return isBaseInstanceSupported;
+    }
+
+    public static boolean isBufferStorageSupported() {
+        return isBufferStorageSupported;
+    }
+
     public static boolean isRPLEModPresent() {
         return IS_RPLE_PRESENT;
     }
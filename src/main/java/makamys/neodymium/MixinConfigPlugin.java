@@ -53,7 +53,9 @@ public class MixinConfigPlugin implements IMixinConfigPlugin {
             mixins.addAll(Arrays.asList(
                 "MixinRenderGlobal",
                 "MixinWorldRenderer",
-                "MixinTessellator"));
+                "MixinTessellator",
+                "MixinEntityRenderer",
+                "MixinActiveRenderInfo"));
                 
             if (OFUtil.isOptiFinePresent()) {
                 System.out.println("Detected OptiFine");
@@ -10,9 +10,11 @@ import java.util.List;
 import lombok.val;
 import makamys.neodymium.renderer.compat.RenderUtil;
 import makamys.neodymium.renderer.compat.RenderUtilRPLE;
+import makamys.neodymium.renderer.compat.RenderUtilRPLECompact;
 import makamys.neodymium.renderer.compat.RenderUtilShaderRPLE;
 import makamys.neodymium.renderer.compat.RenderUtilShaders;
 import makamys.neodymium.renderer.compat.RenderUtilVanilla;
+import makamys.neodymium.renderer.compat.RenderUtilVanillaCompact;
 import org.apache.commons.lang3.tuple.Pair;
 
 import cpw.mods.fml.client.event.ConfigChangedEvent;
@@ -265,6 +267,12 @@ public class Neodymium implements Proxy {
             } else {
                 util = RenderUtilShaders.INSTANCE;
             }
+        } else if (Config.compactVertexFormat) {
+            if (hasRPLE) {
+                util = RenderUtilRPLECompact.INSTANCE;
+            } else {
+                util = RenderUtilVanillaCompact.INSTANCE;
+            }
         } else {
             if (hasRPLE) {
                 util = RenderUtilRPLE.INSTANCE;
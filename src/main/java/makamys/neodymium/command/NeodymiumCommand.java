@@ -1,5 +1,11 @@
 package makamys.neodymium.command;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -12,6 +18,7 @@ import org.lwjgl.input.Mouse;
 import makamys.neodymium.Compat;
 import makamys.neodymium.Compat.Warning;
 import makamys.neodymium.Neodymium;
+import makamys.neodymium.renderer.MemoryStats;
 import makamys.neodymium.util.ChatUtil;
 import makamys.neodymium.util.ChatUtil.MessageVerbosity;
 import net.minecraft.client.Minecraft;
@@ -39,6 +46,8 @@ public class NeodymiumCommand extends CommandBase {
         ClientCommandHandler.instance.registerCommand(new NeodymiumCommand());
         registerSubCommand("status", new StatusCommand());
         registerSubCommand("disable_advanced_opengl", new DisableAdvancedOpenGLCommand());
+        registerSubCommand("normalstats", new NormalStatsCommand());
+        registerSubCommand("memstats", new MemStatsCommand());
     }
     
     public static void registerSubCommand(String key, ISubCommand command) {
@@ -137,6 +146,60 @@ public class NeodymiumCommand extends CommandBase {
         
     }
     
+    public static class NormalStatsCommand implements ISubCommand {
+
+        @Override
+        public void processCommand(ICommandSender sender, String[] args) {
+            if(Neodymium.renderer != null) {
+                for(String line : Neodymium.renderer.getNormalStatsText()) {
+                    addChatMessage(sender, line);
+                }
+            }
+        }
+        
+    }
+    
+    public static class MemStatsCommand implements ISubCommand {
+
+        @Override
+        public void processCommand(ICommandSender sender, String[] args) {
+            if(Neodymium.renderer == null) return;
+            
+            List<MemoryStats> stats = Neodymium.renderer.getMemoryStats();
+            if(args.length > 1 && args[1].equals("csv")) {
+                File file = new File(Minecraft.getMinecraft().mcDataDir, "neodymium/memstats.csv");
+                try {
+                    writeCSV(file, stats);
+                    addChatMessage(sender, "Appended " + stats.size() + " rows to " + file.getPath());
+                } catch(IOException e) {
+                    addColoredChatMessage(sender, "Failed to write " + file.getPath() + ": " + e.getMessage(), ERROR_COLOR);
+                }
+            } else {
+                addChatMessage(sender, "Memory managers: " + stats.size());
+                for(MemoryStats memStats : stats) {
+                    for(String line : memStats.toText()) {
+                        addChatMessage(sender, line);
+                    }
+                }
+                addColoredChatMessage(sender, "Use /neodymium memstats csv to append these to a CSV file.", HELP_COLOR);
+            }
+        }
+        
+        private static void writeCSV(File file, List<MemoryStats> stats) throws IOException {
+            file.getParentFile().mkdirs();
+            List<String> lines = new ArrayList<>();
+            if(!file.exists()) {
+                lines.add(MemoryStats.CSV_HEADER);
+            }
+            long time = System.currentTimeMillis();
+            for(MemoryStats memStats : stats) {
+                lines.add(memStats.toCSVRow(time));
+            }
+            Files.write(file.toPath(), lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        
+    }
+    
     public static class DisableAdvancedOpenGLCommand implements ISubCommand {
 
         @Override
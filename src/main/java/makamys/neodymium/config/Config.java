@@ -50,8 +50,20 @@ public class Config {
     @ConfigBoolean(cat="render", def=true, com="Don't submit faces for rendering if they are facing away from the camera. Reduces GPU workload at the cost of increasing driver overhead. This will improve the framerate most of the time, but may reduce it if you are not fillrate-limited (such as when playing on a small resolution).")
     public static boolean cullFaces;
     @NeedsReload
+    @ConfigInt(cat="render", def=1, min=0, max=100, com="Faces that are tilted less than this many tenths of a degree away from an axis are culled like faces facing along that axis, with enough leeway for the tilt that they're never culled while they can be seen. At 0, only faces that point exactly along an axis are. Raising it lets more tilted faces from mods get culled, but also keeps axis-aligned faces drawn a bit longer.")
+    public static int normalTolerance;
+    @NeedsReload
+    @ConfigBoolean(cat="render", def=false, com="Remove pairs of faces that two neighbouring blocks draw back to back on the boundary between them, such as the faces two mod blocks draw towards each other. These can't be seen between solid blocks, but still cost rendering time. They can be seen through blocks that aren't solid, such as fancy leaves, so those will look different. Faces inside a single block, like those of crops or rails, are kept.")
+    public static boolean cullHiddenFaces;
+    @NeedsReload
     @ConfigBoolean(cat="render", def=false, com="Store texture coordinates as shorts instead of floats. Slightly reduces memory usage and might improve performance by small amount. Might affect visuals slightly, but it's only noticable if the texture atlas is huge.\nDoes nothing if OptiFine with shaders or RPLE is present.")
     public static boolean shortUV;
+    @NeedsReload
+    @ConfigBoolean(cat="render", def=false, com="Store vertices in a compact format with quantized positions and light values (16 bytes per vertex instead of 28, or 28 instead of 36 with RPLE). Reduces VRAM usage and upload bandwidth. Positions get rounded to 1/32 of a block, which might cause small gaps or z-fighting on models with very fine detail.\nDoes nothing if OptiFine with shaders is present.")
+    public static boolean compactVertexFormat;
+    @NeedsReload
+    @ConfigBoolean(cat="render", def=false, com="Store quads as 4 vertices and draw them through a shared index buffer, instead of splitting each one into two triangles of 3 vertices. Reduces the size of meshes by about a third.")
+    public static boolean indexedQuads;
     @ConfigInt(cat="render", def=1, min=1, max=Integer.MAX_VALUE, com="Interval (in frames) between the sorting of transparent meshes. Increasing this will reduce CPU usage, but also increase the likelyhood of graphical artifacts appearing when transparent chunks are loaded.")
     public static int sortFrequency;
     @ConfigBoolean(cat="render", def=true, com="Don't render meshes that are shrouded in fog. OptiFine also does this when fog is turned on, this setting makes Neodymium follow suit.")
@@ -63,10 +75,43 @@ public class Config {
     public static AutomatableBoolean renderFog;
     @ConfigInt(cat="render", def=Integer.MAX_VALUE, min=0, max=Integer.MAX_VALUE, com="Chunks further away than this distance (in chunks) will not have unaligned polygons such as tall grass rendered.")
     public static int maxUnalignedPolygonDistance;
-    @ConfigInt(cat="render", def=256,min=16,max=1024,com = "The size of the allocation chunks for opaque geometry (in Megabytes). Requires game restart to apply.")
+    @ConfigInt(cat="render", def=256,min=16,max=1024,com = "The size an allocation chunk for opaque geometry may grow to (in Megabytes). Another chunk is allocated once it's full. Requires game restart to apply.")
     public static int bufferSizePass0;
-    @ConfigInt(cat="render", def=64,min=16,max=1024,com = "The size of the allocation chunks for transparent geometry (in Megabytes). Requires game restart to apply.")
+    @ConfigInt(cat="render", def=64,min=16,max=1024,com = "The size an allocation chunk for transparent geometry may grow to (in Megabytes). Another chunk is allocated once it's full. Requires game restart to apply.")
     public static int bufferSizePass1;
+    @ConfigInt(cat="render", def=0,min=0,max=1024,com = "The size allocation chunks start out at (in Megabytes). They get bigger as needed, up to bufferSizePass0 or bufferSizePass1. 0 means a size is picked based on the render distance and how much memory was used before.")
+    public static int initialBufferSize;
+    @ConfigInt(cat="render", def=0, min=0, max=Integer.MAX_VALUE, com="The most VRAM (in Megabytes) the allocation chunks may take up together, counting their unused space. Once it's full, the meshes that are hidden or the farthest away get unloaded from VRAM to make room for closer ones, and are loaded again when they come back into range. 0 means no limit, but a limit is still applied if the GPU runs out of memory.")
+    public static int vramBudget;
+    @ConfigInt(cat="render", def=16, min=0, max=Integer.MAX_VALUE, com="The most mesh data (in Megabytes) that may be uploaded to the GPU per frame. Meshes that don't fit get uploaded on later frames, nearest ones in view first. Lower values avoid stutters when many chunks load at once, but make them show up slower. 0 means no limit.")
+    public static int uploadMegabytesPerFrame;
+    @ConfigBoolean(cat="render", def=false, com="Upload meshes through a persistently mapped staging buffer that the GPU copies from, instead of handing each one to the driver with glBufferSubData. Avoids stalls on drivers that synchronize on every upload. Needs OpenGL 4.4 or ARB_buffer_storage, otherwise the regular path is used.")
+    public static boolean persistentUploadRing;
+    @ConfigInt(cat="render", def=4096, min=0, max=Integer.MAX_VALUE, com="The most mesh data (in Kilobytes) that may be moved around in VRAM per frame to close gaps left by removed meshes. Lower values make frame time spikes less likely, but let the buffers fill up with gaps faster.")
+    public static int compactionKilobytesPerFrame;
+    @ConfigInt(cat="render", def=500, min=0, max=Integer.MAX_VALUE, com="The most time (in microseconds) that may be spent per frame moving meshes around in VRAM to close gaps.")
+    public static int compactionMicrosPerFrame;
+    @ConfigInt(cat="render", def=25, min=0, max=100, com="Meshes only get moved around in VRAM once at least this many percent of the free space is unusable for a mesh as big as all of it.")
+    public static int compactionThreshold;
+    @ConfigInt(cat="render", def=10, min=0, max=50, com="The share of each buffer (in percent) set aside for the meshes of chunks that were rebuilt recently. Keeping these apart means the gaps they leave behind when they get rebuilt again are all in a small area, which is cheap to compact. Applies to new buffers. 0 disables this.")
+    public static int hotArenaPercent;
+    @ConfigInt(cat="render", def=10, min=0, max=Integer.MAX_VALUE, com="How long (in seconds) the mesh of a recently rebuilt chunk has to go without being rebuilt again before it's moved in with the rest.")
+    public static int hotArenaPromotionSeconds;
+    @ConfigBoolean(cat="render", def=false, com="Convert tessellator data straight into the final vertex format while a chunk is being built, instead of buffering it and encoding it in a second pass. Reduces the time spent on chunk updates.")
+    public static boolean fusedCapture;
+    @ConfigBoolean(cat="render", def=false, com="Free the copy of the mesh data kept in RAM once it has been uploaded to the GPU. Roughly halves the memory used by meshes, but a chunk has to be rebuilt if its data is ever needed again.")
+    public static boolean gpuResidentMeshes;
+    @NeedsReload
+    @ConfigBoolean(cat="render", def=false, com="Draw all visible meshes of a buffer with a single glMultiDrawArraysIndirect call, instead of one draw call per region. The offset of each region is looked up on the GPU. Reduces CPU overhead at high render distances. Needs OpenGL 4.3, or ARB_multi_draw_indirect together with OpenGL 4.2 or ARB_base_instance. It is not used with OptiFine shaders.")
+    public static boolean multiDrawIndirect;
+    @ConfigBoolean(cat="render", def=false, com="Rebuild the draw lists of regions on several threads at once. Helps when many regions need to be rebuilt in the same frame, for example when moving into another chunk at high render distances.")
+    public static boolean parallelDrawLists;
+    @ConfigBoolean(cat="render", def=false, com="Take the camera matrices from Minecraft and keep track of the fog settings as they are set, instead of reading them back from OpenGL every frame. Reading back state can stall the CPU until the GPU catches up on some drivers. Fog changed by other mods outside of the usual fog setup may not be picked up. Not used with OptiFine shaders.")
+    public static boolean trackGLState;
+    @ConfigBoolean(cat="render", def=false, com="Finish chunk meshes on a pool of background threads, instead of on the thread that updates the chunk. Chunk updates get faster, but finished chunks show up a frame or so later.")
+    public static boolean asyncMeshFinalization;
+    @ConfigInt(cat="render", def=2, min=1, max=16, com="The number of threads used to finish chunk meshes if asyncMeshFinalization is enabled. Requires game restart to apply.")
+    public static int meshFinalizerThreads;
 
     @ConfigBoolean(cat="misc", def=true, com="Replace splash that says 'OpenGL 1.2!' with 'OpenGL 3.3!'. Just for fun.")
     public static boolean replaceOpenGLSplash;
@@ -83,6 +128,10 @@ public class Config {
     public static boolean showDebugInfo;
     @ConfigBoolean(cat="debug", def=false)
     public static boolean wireframe;
+    @ConfigBoolean(cat="debug", def=false, com="Compare the values tracked by trackGLState with the real OpenGL state every frame, and log the ones that don't match.")
+    public static boolean checkGLStateTracking;
+    @ConfigBoolean(cat="debug", def=false, com="Check every mesh each frame to see if any region's draw list changed without being marked dirty, and log it if one did.")
+    public static boolean checkDrawListEvents;
     @ConfigBoolean(cat="debug", def=false, com="Enable building of vanilla chunk meshes. Makes it possible to switch to the vanilla renderer on the fly, at the cost of reducing chunk update performance. Also fixes compatibility with Factorization (see issue #49).\nCompatibility note: Not compatible with FalseTweaks, so enabling this will have no effect if FalseTweaks is present.")
     public static boolean enableVanillaChunkMeshes;
     
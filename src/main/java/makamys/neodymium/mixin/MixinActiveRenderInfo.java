@@ -0,0 +1,28 @@
+package makamys.neodymium.mixin;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import net.minecraft.client.renderer.ActiveRenderInfo;
+
+/** Exposes the camera matrices and viewport that {@link ActiveRenderInfo#updateRenderInfo} captures every frame. */
+@Mixin(ActiveRenderInfo.class)
+public interface MixinActiveRenderInfo {
+    @Accessor("modelview")
+    static FloatBuffer getModelview() {
+        throw new AssertionError();
+    }
+
+    @Accessor("projection")
+    static FloatBuffer getProjection() {
+        throw new AssertionError();
+    }
+
+    @Accessor("viewport")
+    static IntBuffer getViewport() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,43 @@
+package makamys.neodymium.mixin;
+
+import java.nio.FloatBuffer;
+
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+
+import makamys.neodymium.renderer.GLStateTracker;
+import net.minecraft.client.renderer.EntityRenderer;
+
+/**
+ * Reports the fog settings to {@link GLStateTracker} as they get set. The calls are wrapped rather than redirected, so
+ * they still reach the wrappers and redirects of other mods. Not required: if these don't apply, the tracker never
+ * gets any values and the renderer keeps reading them back.
+ */
+@Mixin(EntityRenderer.class)
+public abstract class MixinEntityRenderer {
+    @WrapOperation(method = "setupFog",
+            at = @At(value = "INVOKE", target = "Lorg/lwjgl/opengl/GL11;glFogi(II)V", remap = false),
+            require = 0)
+    private void trackFogi(int pname, int param, Operation<Void> original) {
+        original.call(pname, param);
+        GLStateTracker.onFogi(pname, param);
+    }
+
+    @WrapOperation(method = "setupFog",
+            at = @At(value = "INVOKE", target = "Lorg/lwjgl/opengl/GL11;glFogf(IF)V", remap = false),
+            require = 0)
+    private void trackFogf(int pname, float param, Operation<Void> original) {
+        original.call(pname, param);
+        GLStateTracker.onFogf(pname, param);
+    }
+
+    @WrapOperation(method = "setupFog",
+            at = @At(value = "INVOKE", target = "Lorg/lwjgl/opengl/GL11;glFog(ILjava/nio/FloatBuffer;)V", remap = false),
+            require = 0)
+    private void trackFog(int pname, FloatBuffer params, Operation<Void> original) {
+        original.call(pname, params);
+        GLStateTracker.onFog(pname, params);
+    }
+}
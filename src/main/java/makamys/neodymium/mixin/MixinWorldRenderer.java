@@ -1,6 +1,8 @@
 package makamys.neodymium.mixin;
 
 import com.google.common.collect.Lists;
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
 import makamys.neodymium.Compat;
 import makamys.neodymium.Neodymium;
 import makamys.neodymium.ducks.NeodymiumTessellator;
@@ -8,6 +10,9 @@ import makamys.neodymium.ducks.NeodymiumWorldRenderer;
 import makamys.neodymium.renderer.ChunkMesh;
 import makamys.neodymium.renderer.NeoRenderer;
 
+import net.minecraft.block.Block;
+import net.minecraft.client.renderer.RenderBlocks;
+import net.minecraft.client.renderer.Tessellator;
 import net.minecraft.client.renderer.WorldRenderer;
 import net.minecraft.entity.EntityLivingBase;
 
@@ -32,6 +37,8 @@ public abstract class MixinWorldRenderer implements NeodymiumWorldRenderer {
     @Unique
     private boolean nd$savedDrawnStatus;
     @Unique
+    private boolean nd$savedInFrustum;
+    @Unique
     private List<ChunkMesh> nd$chunkMeshes;
     @Unique
     private boolean nd$renderPassSuppressed;
@@ -49,7 +56,7 @@ public abstract class MixinWorldRenderer implements NeodymiumWorldRenderer {
     @Override
     public ChunkMesh nd$beginRenderPass(int pass) {
         if(Neodymium.isActive() && !nd$renderPassSuppressed) {
-            ChunkMesh cm = new ChunkMesh((WorldRenderer)(Object)this, pass);
+            ChunkMesh cm = ChunkMesh.obtain((WorldRenderer)(Object)this, pass);
             ((NeodymiumTessellator)Compat.tessellator()).nd$setCaptureTarget(cm);
             return cm;
         }
@@ -176,6 +183,22 @@ public abstract class MixinWorldRenderer implements NeodymiumWorldRenderer {
             GL11.glEndList();
     }
 
+    // Not required, it only lets hidden face culling tell blocks apart. Without it, no faces get culled.
+    @WrapOperation(method = "updateRenderer",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/client/renderer/RenderBlocks;renderBlockByRenderType(Lnet/minecraft/block/Block;III)Z"),
+                   require = 0)
+    private boolean preRenderBlock(RenderBlocks renderBlocks, Block block, int x, int y, int z, Operation<Boolean> original) {
+        if (Neodymium.isActive()) {
+            Tessellator tessellator = Compat.tessellator();
+            ChunkMesh captureTarget = ((NeodymiumTessellator) tessellator).nd$getCaptureTarget();
+            if (captureTarget != null) {
+                captureTarget.onBlockStart(tessellator.vertexCount, block.isOpaqueCube());
+            }
+        }
+        return original.call(renderBlocks, block, x, y, z);
+    }
+
     @Inject(method = "postRenderBlocks",
             at = @At("RETURN"),
             require = 1)
@@ -199,6 +222,7 @@ public abstract class MixinWorldRenderer implements NeodymiumWorldRenderer {
             require = 1)
     private void preUpdateInFrustum(CallbackInfo ci) {
         nd$saveDrawnStatus();
+        nd$savedInFrustum = isInFrustum;
     }
 
     @Inject(method = "updateInFrustum",
@@ -206,5 +230,8 @@ public abstract class MixinWorldRenderer implements NeodymiumWorldRenderer {
             require = 1)
     private void postUpdateInFrustum(CallbackInfo ci) {
         nd$notifyIfDrawnStatusChanged();
+        if(Neodymium.isActive() && isInFrustum != nd$savedInFrustum) {
+            Neodymium.renderer.onWorldRendererFrustumChanged((WorldRenderer) (Object) this);
+        }
     }
 }
@@ -4,11 +4,15 @@ import static makamys.neodymium.Constants.LOGGER;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import gnu.trove.list.array.TIntArrayList;
 import lombok.val;
@@ -18,7 +22,8 @@ import org.lwjgl.opengl.GL11;
 
 import makamys.neodymium.config.Config;
 import makamys.neodymium.ducks.NeodymiumWorldRenderer;
-import makamys.neodymium.util.BufferWriter;
+import makamys.neodymium.util.BufferPool;
+import makamys.neodymium.util.BulkBufferWriter;
 import makamys.neodymium.util.Util;
 import makamys.neodymium.util.WarningHelper;
 import net.minecraft.client.Minecraft;
@@ -32,19 +37,58 @@ public class ChunkMesh extends Mesh {
     
     WorldRenderer wr;
     private int tesselatorDataCount;
-
-    private int[] subMeshStart = new int[NORMAL_ORDER.length]; 
+    private boolean fusedCapture;
+    private boolean indexedQuads;
+    private boolean cullHiddenFaces;
+    private int hiddenPolygonsRemoved;
+    /**
+     * The key of the block the vertices at the start of the next tessellator batch belong to, or -1 if that's unknown.
+     * See {@link HiddenFaceCuller#blockKey}.
+     */
+    private int currentBlock;
+    private int blockCount;
+    /** The vertex counts of the tessellator at which blocks started since the last batch was captured. */
+    private final TIntArrayList pendingBlockStarts = new TIntArrayList();
+    /** The key of each block in {@link #pendingBlockStarts}. */
+    private final TIntArrayList pendingBlocks = new TIntArrayList();
+    private volatile boolean destroyed;
+    private boolean bufferDropped;
+    private boolean rebuildRequested;
+    /** Whether the data of the mesh is still being encoded by the mesh finalizer. */
+    private boolean finalizing;
+    private boolean recycled;
+    /** Incremented each time the mesh is taken from the pool, so results meant for an earlier use can be told apart. */
+    private int generation;
+
+    /** The first polygon of each normal, in the normal order, or -1 if the mesh has none with that normal. */
+    int[] subMeshStart = new int[NORMAL_ORDER.length]; 
     
     public static final AtomicLong usedRAM = new AtomicLong();
     public static final AtomicInteger instances = new AtomicInteger();
+    public static final AtomicLong totalHiddenPolygonsRemoved = new AtomicLong();
+    public static final BufferPool bufferPool = new BufferPool(64 * 1024 * 1024);
 
     public static final ThreadLocal<PolygonMeshBuffer> polygonBuf = ThreadLocal.withInitial(PolygonMeshBuffer::new);
+    public static final ThreadLocal<MeshStagingBuffer> stagingBuf = ThreadLocal.withInitial(MeshStagingBuffer::new);
+
+    // Capture buffers handed back by the mesh finalizer, to replace the ones detached from the capturing threads
+    private static final Queue<PolygonMeshBuffer> sparePolygonBufs = new ConcurrentLinkedQueue<>();
+    private static final Queue<MeshStagingBuffer> spareStagingBufs = new ConcurrentLinkedQueue<>();
 
-    private static final PolygonNormal[] NORMAL_ORDER = new PolygonNormal[] {PolygonNormal.NONE, PolygonNormal.POSITIVE_Y, PolygonNormal.POSITIVE_X, PolygonNormal.POSITIVE_Z, PolygonNormal.NEGATIVE_X, PolygonNormal.NEGATIVE_Z, PolygonNormal.NEGATIVE_Y};
+    private static final PolygonNormal[] NORMAL_ORDER = createNormalOrder(PolygonNormal.NONE, PolygonNormal.POSITIVE_Y, PolygonNormal.POSITIVE_X, PolygonNormal.POSITIVE_Z, PolygonNormal.NEGATIVE_X, PolygonNormal.NEGATIVE_Z, PolygonNormal.NEGATIVE_Y);
     private static final int[] POLYGON_NORMAL_TO_NORMAL_ORDER;
     private static final int[] NORMAL_ORDER_TO_POLYGON_NORMAL;
 
     private static final Flags FLAGS = new Flags(true, true, true, false);
+
+    private static final int MAX_POOLED_MESHES = 1024;
+    private static final ArrayDeque<ChunkMesh> meshPool = new ArrayDeque<>();
+
+    private static final int ERROR_UNSUPPORTED_DRAW_MODE = 1;
+    private static final int ERROR_NO_TEXTURE = 1 << 1;
+    private static final int WARNING_NO_BRIGHTNESS = 1 << 2;
+    private static final int WARNING_NO_COLOR = 1 << 3;
+    private static final int ERRORS = ERROR_UNSUPPORTED_DRAW_MODE | ERROR_NO_TEXTURE;
     
     static {
         POLYGON_NORMAL_TO_NORMAL_ORDER = new int[PolygonNormal.values().length];
@@ -59,47 +103,132 @@ public class ChunkMesh extends Mesh {
         }
     }
     
+    /** The given normals come first, followed by the cones in declaration order. */
+    private static PolygonNormal[] createNormalOrder(PolygonNormal... first) {
+        List<PolygonNormal> order = new ArrayList<>(Arrays.asList(first));
+        for(PolygonNormal normal : PolygonNormal.values()) {
+            if(!order.contains(normal)) {
+                order.add(normal);
+            }
+        }
+        return order.toArray(new PolygonNormal[0]);
+    }
+    
     public ChunkMesh(WorldRenderer wr, int pass) {
+        init(wr, pass);
+    }
+    
+    /** Empties the mesh pool and the buffer pool, so what runs next starts out with neither. */
+    static void clearPools() {
+        synchronized(meshPool) {
+            meshPool.clear();
+        }
+        bufferPool.clear();
+    }
+    
+    /** Returns a mesh from the pool of destroyed ones if there is any, or a new one otherwise. */
+    public static ChunkMesh obtain(WorldRenderer wr, int pass) {
+        ChunkMesh mesh;
+        synchronized(meshPool) {
+            mesh = meshPool.pollFirst();
+        }
+        if(mesh == null) {
+            return new ChunkMesh(wr, pass);
+        }
+        mesh.init(wr, pass);
+        return mesh;
+    }
+    
+    private void init(WorldRenderer wr, int pass) {
         this.x = wr.posX / 16;
         this.y = wr.posY / 16;
         this.z = wr.posZ / 16;
         this.wr = wr;
         this.pass = pass;
+        this.cullHiddenFaces = Config.cullHiddenFaces && pass == 0;
+        // The hidden face pass works on the polygon buffer, which fused capture skips
+        this.fusedCapture = Config.fusedCapture && !cullHiddenFaces;
+        this.indexedQuads = Config.indexedQuads;
         Arrays.fill(subMeshStart, -1);
         
+        tesselatorDataCount = 0;
+        hiddenPolygonsRemoved = 0;
+        currentBlock = -1;
+        blockCount = 0;
+        pendingBlockStarts.resetQuick();
+        pendingBlocks.resetQuick();
+        bufferSize = 0;
+        destroyed = false;
+        bufferDropped = false;
+        rebuildRequested = false;
+        finalizing = false;
+        recycled = false;
+        generation++;
+        
+        buffer = null;
+        polygonCount = 0;
+        visible = false;
+        gpuStatus = GPUStatus.UNSENT;
+        attachedManager = null;
+        iFirst = iCount = -1;
+        offset = -1;
+        normal = PolygonNormal.NONE;
+        containingRegion = null;
+        regionSlot = -1;
+        verticesPerPolygon = -1;
+        drawMode = -1;
+        
         instances.getAndIncrement();
         
-        if(!polygonBuf.get().isEmpty()) {
+        if(!polygonBuf.get().isEmpty() || !stagingBuf.get().isEmpty()) {
             LOGGER.error("Invalid state: tried to construct a chunk mesh before the previous one has finished constructing!");
         }
     }
 
+    /**
+     * Called right before a block gets rendered into the tessellator. Lets hidden face culling tell which block each
+     * quad came from, so it only removes faces that two different blocks put back to back, and only if neither block
+     * can be seen through.
+     */
+    public void onBlockStart(int vertexCount, boolean opaqueCube) {
+        if(cullHiddenFaces) {
+            pendingBlockStarts.add(vertexCount);
+            pendingBlocks.add(HiddenFaceCuller.blockKey(blockCount++, opaqueCube));
+        }
+    }
+
     public void addTessellatorData(Tessellator t) {
         tesselatorDataCount++;
         
         if(t.vertexCount == 0) {
             // Sometimes the tessellator has no vertices and weird flags. Don't warn in this case, just silently return.
+            finishBlockStarts();
             return;
         }
-        List<String> errors = new ArrayList<>();
-        List<String> warnings = new ArrayList<>();
+        int problems = 0;
         if(t.drawMode != GL11.GL_QUADS && t.drawMode != GL11.GL_TRIANGLES) {
-            errors.add("Unsupported draw mode: " + t.drawMode);
+            problems |= ERROR_UNSUPPORTED_DRAW_MODE;
         }
-        boolean triangulate = t.drawMode == GL11.GL_QUADS;
+        boolean quads = t.drawMode == GL11.GL_QUADS;
+        boolean triangulate = quads && !indexedQuads;
         if (drawMode == -1) {
-            drawMode = GL11.GL_TRIANGLES;
-            verticesPerPolygon = 3;
+            if(indexedQuads) {
+                drawMode = GL11.GL_QUADS;
+                verticesPerPolygon = 4;
+            } else {
+                drawMode = GL11.GL_TRIANGLES;
+                verticesPerPolygon = 3;
+            }
         }
 
         if(!t.hasTexture) {
-            errors.add(String.format("Texture data is missing."));
+            problems |= ERROR_NO_TEXTURE;
         }
         if(!t.hasBrightness) {
-            warnings.add("Brightness data is missing");
+            problems |= WARNING_NO_BRIGHTNESS;
         }
         if(!t.hasColor) {
-            warnings.add("Color data is missing");
+            problems |= WARNING_NO_COLOR;
         }
         // TODO This opengl call crashes the JVM when not run on the client thread.
 //        if(t.hasNormals && GL11.glIsEnabled(GL11.GL_LIGHTING)) {
@@ -108,29 +237,60 @@ public class ChunkMesh extends Mesh {
         FLAGS.hasBrightness = t.hasBrightness;
         FLAGS.hasColor = t.hasColor;
 
-        int inputVertices = triangulate ? 4 : 3;
+        int inputVertices = quads ? 4 : 3;
         int outputVertexMultiplier = triangulate ? 2 : 1;
 
         int tessellatorVertexSize = Neodymium.util.vertexSizeInTessellator();
-        int polygonSize = Neodymium.util.polygonSize(3) * outputVertexMultiplier;
+        int polygonSize = Neodymium.util.polygonSize(verticesPerPolygon) * outputVertexMultiplier;
 
         int polygonCount = t.vertexCount / inputVertices;
 
-        val buf = polygonBuf.get();
-        buf.ensureCapacity(polygonCount * polygonSize);
-        for(int polygonI = 0; polygonI < polygonCount; polygonI++) {
-            boolean deleted = MeshPolygon.processPolygon(t.rawBuffer, polygonI * inputVertices * tessellatorVertexSize, buf.data, buf.size, NeoRegion.toRelativeOffset(-t.xOffset), NeoRegion.toRelativeOffset(-t.yOffset), NeoRegion.toRelativeOffset(-t.zOffset), triangulate, FLAGS);
-            if (!deleted) {
-                buf.size += polygonSize;
+        boolean empty;
+        if(fusedCapture) {
+            empty = captureFused(t, polygonCount, inputVertices, outputVertexMultiplier, tessellatorVertexSize, triangulate, quads);
+        } else {
+            val buf = polygonBuf.get();
+            buf.ensureCapacity(polygonCount * polygonSize);
+            int nextBlockStart = 0;
+            int block = currentBlock;
+            for(int polygonI = 0; polygonI < polygonCount; polygonI++) {
+                while(nextBlockStart < pendingBlockStarts.size() && pendingBlockStarts.get(nextBlockStart) <= polygonI * inputVertices) {
+                    block = pendingBlocks.get(nextBlockStart++);
+                }
+                boolean deleted = processPolygon(t.rawBuffer, polygonI * inputVertices * tessellatorVertexSize, buf.data, buf.size, NeoRegion.toRelativeOffset(-t.xOffset), NeoRegion.toRelativeOffset(-t.yOffset), NeoRegion.toRelativeOffset(-t.zOffset), triangulate, quads);
+                if (!deleted) {
+                    if(cullHiddenFaces && quads) {
+                        buf.quadStarts.add(buf.size);
+                        buf.quadBlocks.add(block);
+                    }
+                    buf.size += polygonSize;
+                }
             }
+            empty = buf.isEmpty();
         }
+        finishBlockStarts();
         
-        if(!buf.isEmpty()) {
+        if(!empty) {
             // Only show errors if we're actually supposed to be drawing something
-            if(!errors.isEmpty() || !warnings.isEmpty()) {
+            if(problems != 0) {
                 if(!Config.silenceErrors) {
+                    // The messages are only built here so the common path doesn't allocate
+                    List<String> errors = new ArrayList<>();
+                    List<String> warnings = new ArrayList<>();
+                    if((problems & ERROR_UNSUPPORTED_DRAW_MODE) != 0) {
+                        errors.add("Unsupported draw mode: " + t.drawMode);
+                    }
+                    if((problems & ERROR_NO_TEXTURE) != 0) {
+                        errors.add("Texture data is missing.");
+                    }
+                    if((problems & WARNING_NO_BRIGHTNESS) != 0) {
+                        warnings.add("Brightness data is missing");
+                    }
+                    if((problems & WARNING_NO_COLOR) != 0) {
+                        warnings.add("Color data is missing");
+                    }
                     String dimId = wr.worldObj != null && wr.worldObj.provider != null ? "" + wr.worldObj.provider.dimensionId : "UNKNOWN";
-                    if(!errors.isEmpty()) {
+                    if((problems & ERRORS) != 0) {
                         LOGGER.error("Errors in chunk ({}, {}, {}) in dimension {}:", x, y, z, dimId);
                         for(String error : errors) {
                             LOGGER.error("Error: " + error);
@@ -147,7 +307,8 @@ public class ChunkMesh extends Mesh {
                             e.printStackTrace();
                         }
                         LOGGER.error("Skipping chunk due to errors.");
-                        buf.reset();
+                        polygonBuf.get().reset();
+                        stagingBuf.get().reset();
                     } else {
                         WarningHelper.showDebugMessageOnce(String.format("Warnings in chunk (%d, %d, %d) in dimension %s: %s", x, y, z, dimId, String.join(", ", warnings)));
                     }
@@ -156,6 +317,42 @@ public class ChunkMesh extends Mesh {
         }
     }
     
+    /**
+     * Converts the polygons of the tessellator straight into the final vertex format, writing each one into the
+     * staging region of its normal. The result is identical to what {@link #createBuffer(int[])} would produce from
+     * the polygon buffer, but every vertex only gets touched once.
+     *
+     * @return Whether the staging buffer is still empty.
+     */
+    private boolean captureFused(Tessellator t, int polygonCount, int inputVertices, int outputVertexMultiplier, int tessellatorVertexSize, boolean triangulate, boolean quads) {
+        val staging = stagingBuf.get();
+        val stride = Neodymium.renderer.getStride();
+        val outputPolygonSize = Neodymium.util.polygonSize(verticesPerPolygon);
+        val scratch = staging.scratch(outputPolygonSize * outputVertexMultiplier);
+        val offsetX = NeoRegion.toRelativeOffset(-t.xOffset);
+        val offsetY = NeoRegion.toRelativeOffset(-t.yOffset);
+        val offsetZ = NeoRegion.toRelativeOffset(-t.zOffset);
+        for(int polygonI = 0; polygonI < polygonCount; polygonI++) {
+            boolean deleted = processPolygon(t.rawBuffer, polygonI * inputVertices * tessellatorVertexSize, scratch, 0, offsetX, offsetY, offsetZ, triangulate, quads);
+            if(deleted) continue;
+
+            for(int i = 0; i < outputVertexMultiplier; i++) {
+                int polygonOffset = i * outputPolygonSize;
+                int bucket = pass == 0 ? POLYGON_NORMAL_TO_NORMAL_ORDER[scratch[polygonOffset + outputPolygonSize - 1]] : 0;
+                staging.write(bucket, scratch, polygonOffset, stride, verticesPerPolygon);
+            }
+        }
+        return staging.isEmpty();
+    }
+
+    private boolean processPolygon(int[] tessBuffer, int tessOffset, int[] polygonBuffer, int polygonOffset, float offsetX, float offsetY, float offsetZ, boolean triangulate, boolean quads) {
+        if(indexedQuads) {
+            return MeshPolygon.processQuad(tessBuffer, tessOffset, polygonBuffer, polygonOffset, offsetX, offsetY, offsetZ, !quads, FLAGS);
+        } else {
+            return MeshPolygon.processPolygon(tessBuffer, tessOffset, polygonBuffer, polygonOffset, offsetX, offsetY, offsetZ, triangulate, FLAGS);
+        }
+    }
+
     private static String tessellatorToString(Tessellator t) {
         return "(" + t.xOffset + ", " + t.yOffset + ", " + t.zOffset + ")";
     }
@@ -167,20 +364,109 @@ public class ChunkMesh extends Mesh {
     }
 
     public void finishConstruction() {
-        val buf = polygonBuf.get();
-        polygonCount = buf.size / Neodymium.util.polygonSize(verticesPerPolygon);
-        buffer = createBuffer(buf.data);
+        if(Config.asyncMeshFinalization) {
+            finalizing = true;
+            // Take the captured data with us, so this thread can start capturing the next mesh right away
+            if(fusedCapture) {
+                MeshFinalizer.submit(this, null, detach(stagingBuf, spareStagingBufs, MeshStagingBuffer::new));
+            } else {
+                MeshFinalizer.submit(this, detach(polygonBuf, sparePolygonBufs, PolygonMeshBuffer::new), null);
+            }
+        } else {
+            buffer = build(polygonBuf.get(), stagingBuf.get());
+            bufferSize = buffer.limit();
+            usedRAM.getAndAdd(bufferSize);
+        }
+    }
+
+    /**
+     * Encodes the captured data into a vertex buffer, and resets the capture buffer it came from. Doesn't assign the
+     * result to the mesh, so it is safe to call on a finalizer thread as long as the mesh hasn't been handed back yet.
+     */
+    ByteBuffer build(PolygonMeshBuffer buf, MeshStagingBuffer staging) {
+        ByteBuffer result;
+        if(fusedCapture) {
+            polygonCount = staging.polygonCount();
+            result = staging.concatenate(subMeshStart);
+            staging.reset();
+        } else {
+            if(cullHiddenFaces) {
+                hiddenPolygonsRemoved = HiddenFaceCuller.cull(buf, Neodymium.util.polygonSize(verticesPerPolygon), indexedQuads ? 1 : 2);
+                totalHiddenPolygonsRemoved.addAndGet(hiddenPolygonsRemoved);
+            }
+            polygonCount = buf.size / Neodymium.util.polygonSize(verticesPerPolygon);
+            result = createBuffer(buf.data);
+            buf.reset();
+        }
+        return result;
+    }
+
+    /**
+     * Takes the result of an asynchronous {@link #build}. Called on the render thread.
+     *
+     * @return Whether the mesh is still alive. If it has been destroyed in the meantime (because its world renderer
+     * got rebuilt or deleted), the result is stale and gets discarded.
+     */
+    boolean completeFinalization(ByteBuffer result, int generation) {
+        if(generation != this.generation) {
+            // Can't normally happen, since a mesh only gets recycled once it's not being finalized anymore
+            if(result != null) {
+                bufferPool.release(result);
+            }
+            return false;
+        }
+        finalizing = false;
+        if(destroyed || result == null) {
+            if(result != null) {
+                bufferPool.release(result);
+            }
+            recycleIfUnused();
+            return false;
+        }
+        buffer = result;
         bufferSize = buffer.limit();
         usedRAM.getAndAdd(bufferSize);
+        return true;
+    }
+
+    /** @return The number of polygons that were removed from the mesh for being hidden behind an opposite face. */
+    public int getHiddenPolygonsRemoved() {
+        return hiddenPolygonsRemoved;
+    }
+
+    boolean isDestroyed() {
+        return destroyed;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
 
-        buf.reset();
+    private static <T> T detach(ThreadLocal<T> threadLocal, Queue<T> spares, Supplier<T> constructor) {
+        T detached = threadLocal.get();
+        T spare = spares.poll();
+        threadLocal.set(spare != null ? spare : constructor.get());
+        return detached;
+    }
+
+    static void recycleCaptureBuffers(PolygonMeshBuffer buf, MeshStagingBuffer staging) {
+        if(buf != null) {
+            buf.reset();
+            sparePolygonBufs.offer(buf);
+        }
+        if(staging != null) {
+            staging.reset();
+            spareStagingBufs.offer(staging);
+        }
     }
 
     //Used by FalseTweaks when cancelling a threaded render job
     public static void cancelRendering() {
         val buf = polygonBuf.get();
-        if (!buf.isEmpty()) {
+        val staging = stagingBuf.get();
+        if (!buf.isEmpty() || !staging.isEmpty()) {
             buf.reset();
+            staging.reset();
             LOGGER.debug("Cancelled unfinished render pass!");
         }
     }
@@ -188,10 +474,12 @@ public class ChunkMesh extends Mesh {
     private static final ThreadLocal<MeshPolygonBucketSort> threadBucketer = ThreadLocal.withInitial(
             MeshPolygonBucketSort::new);
 
+    private static final ThreadLocal<BulkBufferWriter> threadWriter = ThreadLocal.withInitial(BulkBufferWriter::new);
+
     private ByteBuffer createBuffer(int[] polygons) {
         val stride = Neodymium.renderer.getStride();
-        ByteBuffer buffer = BufferUtils.createByteBuffer(polygonCount * verticesPerPolygon * stride);
-        BufferWriter out = new BufferWriter(buffer);
+        ByteBuffer buffer = bufferPool.allocate(polygonCount * verticesPerPolygon * stride);
+        val out = threadWriter.get().wrap(buffer, bufferPool.intView(buffer));
         
         boolean sortByNormals = pass == 0;
 
@@ -210,21 +498,48 @@ public class ChunkMesh extends Mesh {
             Neodymium.util.writeMeshPolygonToBuffer(polygons, index * polygonSize, out, stride, verticesPerPolygon);
         }
 
-        
+        out.flush();
         buffer.flip();
         return buffer;
     }
     
     void destroy() {
-        if(buffer != null) {
-            usedRAM.getAndAdd(-buffer.limit());
+        if(!destroyed) {
+            destroyed = true;
             instances.getAndDecrement();
-            buffer = null;
+            releaseBuffer();
             
             if(gpuStatus == Mesh.GPUStatus.SENT) {
                 gpuStatus = Mesh.GPUStatus.PENDING_DELETE;
             }
         }
+        recycleIfUnused();
+    }
+    
+    /**
+     * Puts the mesh back into the pool once nothing refers to it anymore: it has to be destroyed, not in VRAM (the
+     * memory manager lets go of it once it's deleted from there), and not waiting for the mesh finalizer.
+     */
+    private void recycleIfUnused() {
+        if(destroyed && !recycled && !finalizing && gpuStatus == Mesh.GPUStatus.UNSENT) {
+            recycled = true;
+            wr = null;
+            containingRegion = null;
+            attachedManager = null;
+            synchronized(meshPool) {
+                if(meshPool.size() < MAX_POOLED_MESHES) {
+                    meshPool.addFirst(this);
+                }
+            }
+        }
+    }
+    
+    private void releaseBuffer() {
+        if(buffer != null) {
+            usedRAM.getAndAdd(-buffer.limit());
+            bufferPool.release(buffer);
+            buffer = null;
+        }
     }
     
     @Override
@@ -232,6 +547,27 @@ public class ChunkMesh extends Mesh {
         destroy();
     }
     
+    @Override
+    public void dropBuffer() {
+        if(buffer != null && gpuStatus == Mesh.GPUStatus.SENT) {
+            releaseBuffer();
+            bufferDropped = true;
+        }
+    }
+    
+    @Override
+    public boolean isBufferDropped() {
+        return bufferDropped;
+    }
+    
+    @Override
+    public void requestRebuild() {
+        if(!rebuildRequested && !destroyed) {
+            rebuildRequested = true;
+            Minecraft.getMinecraft().renderGlobal.markBlocksForUpdate(wr.posX, wr.posY, wr.posZ, wr.posX + 15, wr.posY + 15, wr.posZ + 15);
+        }
+    }
+    
     static List<ChunkMesh> getChunkMesh(int theX, int theY, int theZ) {
         WorldRenderer wr = new WorldRenderer(Minecraft.getMinecraft().theWorld, new ArrayList<TileEntity>(), theX * 16, theY * 16, theZ * 16, 100000);
     
@@ -269,7 +605,7 @@ public class ChunkMesh extends Mesh {
                 int endIndex = i < subMeshStart.length ? subMeshStart[i] : polygonCount;
                 
                 piFirst.put(iFirst + (startIndex*verticesPerPolygon));
-                piCount.put((endIndex - startIndex)*verticesPerPolygon);
+                piCount.put((endIndex - startIndex)*elementsPerPolygon());
                 renderedMeshes++;
                 
                 startIndex = -1;
@@ -280,22 +616,45 @@ public class ChunkMesh extends Mesh {
     }
     
     private boolean isNormalVisible(PolygonNormal normal, int interpXDiv, int interpYDiv, int interpZDiv, int pass) {
-        switch(normal) {
-        case POSITIVE_X:
-            return interpXDiv >= ((x + 0));
-        case NEGATIVE_X:
-            return interpXDiv < ((x + 1));
-        case POSITIVE_Y:
-            return interpYDiv >= ((y + 0));
-        case NEGATIVE_Y:
-            return interpYDiv < ((y + 1));
-        case POSITIVE_Z:
-            return interpZDiv >= ((z + 0));
-        case NEGATIVE_Z:
-            return interpZDiv < ((z + 1));
-        default:
-            return pass != 0 || Config.maxUnalignedPolygonDistance == Integer.MAX_VALUE
-            || Util.distSq(interpXDiv, interpYDiv, interpZDiv, x, y, z) < Math.pow((double)Config.maxUnalignedPolygonDistance, 2);
+        if(!normal.isAxisAligned()) {
+            boolean inRange = pass != 0 || Config.maxUnalignedPolygonDistance == Integer.MAX_VALUE
+                    || Util.distSq(interpXDiv, interpYDiv, interpZDiv, x, y, z) < Math.pow((double)Config.maxUnalignedPolygonDistance, 2);
+            if(!inRange || normal == PolygonNormal.NONE) {
+                return inRange;
+            }
+        }
+        if(normal.isAxisAligned()) {
+            int dx = interpXDiv - x;
+            int dy = interpYDiv - y;
+            int dz = interpZDiv - z;
+            int along = normal.signX * dx + normal.signY * dy + normal.signZ * dz;
+            // The camera and the polygon can be up to one chunk closer along the axis than their chunks are. A polygon
+            // that only counts as facing along the axis thanks to the normal tolerance can still be seen from a bit
+            // further behind, by its lean times how far the camera is off to the side on each of the two other axes.
+            // At a tolerance of 0 this is exact at chunk granularity.
+            int side = Math.abs(dx) + Math.abs(dy) + Math.abs(dz) - Math.abs(along) + 2;
+            return along + 1 > -PolygonNormal.toleranceLean() * side;
+        }
+        // A polygon can only face away from the camera if the camera is behind the chunk along every axis its normal
+        // points towards. Checking the axes separately is conservative for the cones.
+        return (normal.signX > 0 && interpXDiv >= x) || (normal.signX < 0 && interpXDiv < x + 1)
+            || (normal.signY > 0 && interpYDiv >= y) || (normal.signY < 0 && interpYDiv < y + 1)
+            || (normal.signZ > 0 && interpZDiv >= z) || (normal.signZ < 0 && interpZDiv < z + 1);
+    }
+    
+    /** Adds the number of polygons that face in each direction to the array, which is indexed by the normal's ordinal. */
+    public void addNormalStats(long[] polygonsPerNormal) {
+        for(int i = 0; i < subMeshStart.length; i++) {
+            if(subMeshStart[i] == -1) continue;
+            
+            int end = polygonCount;
+            for(int j = i + 1; j < subMeshStart.length; j++) {
+                if(subMeshStart[j] != -1) {
+                    end = subMeshStart[j];
+                    break;
+                }
+            }
+            polygonsPerNormal[NORMAL_ORDER[i].ordinal()] += end - subMeshStart[i];
         }
     }
     
@@ -345,14 +704,38 @@ public class ChunkMesh extends Mesh {
         }
     }
 
+    /** The tessellator starts over after each batch, so the last block carries over to the start of the next one. */
+    private void finishBlockStarts() {
+        if(!pendingBlockStarts.isEmpty()) {
+            currentBlock = pendingBlocks.get(pendingBlocks.size() - 1);
+            pendingBlockStarts.resetQuick();
+            pendingBlocks.resetQuick();
+        }
+    }
+
     public static class PolygonMeshBuffer {
-        public int[] data = new int[1024];
+        private static final int INITIAL_CAPACITY = 1024;
+        /** Number of meshes after which the buffer gets shrunk if none of them needed most of its capacity. */
+        private static final int SHRINK_INTERVAL = 64;
+
+        public int[] data = new int[INITIAL_CAPACITY];
         public int size = 0;
+        /** Offsets of the quads in data, if they are tracked for hidden face culling. */
+        public final TIntArrayList quadStarts = new TIntArrayList();
+        /**
+         * The key of the block each quad in {@link #quadStarts} came from, or -1 if that's unknown. See
+         * {@link HiddenFaceCuller#blockKey}.
+         */
+        public final TIntArrayList quadBlocks = new TIntArrayList();
+
+        private int peakSize;
+        private int resetsSinceShrink;
 
         public void ensureCapacity(int maxNewAmount) {
             int newSize = size + maxNewAmount;
             if (newSize > data.length) {
-                data = Arrays.copyOf(data, newSize);
+                // Grow geometrically, so adding data in many small batches doesn't copy the buffer each time
+                data = Arrays.copyOf(data, Math.max(newSize, data.length + (data.length >> 1)));
             }
         }
 
@@ -361,7 +744,138 @@ public class ChunkMesh extends Mesh {
         }
 
         public void reset() {
+            peakSize = Math.max(peakSize, size);
+            if (++resetsSinceShrink >= SHRINK_INTERVAL) {
+                // Give back the memory a rare huge chunk made us grab, unless recent chunks needed it too
+                if (data.length > INITIAL_CAPACITY && data.length > peakSize * 4) {
+                    data = new int[Math.max(INITIAL_CAPACITY, peakSize * 2)];
+                }
+                peakSize = 0;
+                resetsSinceShrink = 0;
+            }
             size = 0;
+            quadStarts.resetQuick();
+            quadBlocks.resetQuick();
+        }
+    }
+
+    /**
+     * Holds one growable region of encoded vertex data per entry of {@link #NORMAL_ORDER}. Polygons get appended to
+     * the region of their normal in arrival order, so concatenating the regions yields the same layout as bucket
+     * sorting the polygon buffer would.
+     */
+    public static class MeshStagingBuffer {
+        private static final int INITIAL_CAPACITY = 4096;
+
+        private final ByteBuffer[] buckets = new ByteBuffer[NORMAL_ORDER.length];
+        private final BulkBufferWriter[] writers = new BulkBufferWriter[NORMAL_ORDER.length];
+        private final int[] polygonCounts = new int[NORMAL_ORDER.length];
+        private final int[] peakBytes = new int[NORMAL_ORDER.length];
+        private int resetsSinceShrink;
+        private int[] scratch = new int[0];
+
+        public int[] scratch(int size) {
+            if (scratch.length < size) {
+                scratch = new int[size];
+            }
+            return scratch;
+        }
+
+        public void write(int bucket, int[] polygons, int polygonOffset, int stride, int verticesPerPolygon) {
+            ensureCapacity(bucket, stride * verticesPerPolygon);
+            val writer = writers[bucket];
+            Neodymium.util.writeMeshPolygonToBuffer(polygons, polygonOffset, writer, stride, verticesPerPolygon);
+            writer.flush();
+            polygonCounts[bucket]++;
+        }
+
+        private void ensureCapacity(int bucket, int amount) {
+            val old = buckets[bucket];
+            if (old != null && old.remaining() >= amount) {
+                return;
+            }
+            int capacity = old == null ? INITIAL_CAPACITY : old.capacity() * 2;
+            while (capacity < (old == null ? 0 : old.position()) + amount) {
+                capacity *= 2;
+            }
+            val grown = BufferUtils.createByteBuffer(capacity);
+            if (old != null) {
+                old.flip();
+                grown.put(old);
+            }
+            buckets[bucket] = grown;
+            if (writers[bucket] == null) {
+                writers[bucket] = new BulkBufferWriter(grown);
+            } else {
+                writers[bucket].wrap(grown);
+            }
+        }
+
+        public int polygonCount() {
+            int count = 0;
+            for (int polygons : polygonCounts) {
+                count += polygons;
+            }
+            return count;
+        }
+
+        /** Copies the regions into a new buffer in {@link #NORMAL_ORDER}, and records where each one starts. */
+        public ByteBuffer concatenate(int[] subMeshStart) {
+            int size = 0;
+            for (val bucket : buckets) {
+                if (bucket != null) {
+                    size += bucket.position();
+                }
+            }
+            val buffer = bufferPool.allocate(size);
+            int polygons = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                if (polygonCounts[i] == 0) continue;
+
+                subMeshStart[i] = polygons;
+                polygons += polygonCounts[i];
+
+                // Copied without a duplicate, so this doesn't allocate. The bucket ends up where it was.
+                val bucket = buckets[i];
+                bucket.flip();
+                buffer.put(bucket);
+                bucket.limit(bucket.capacity());
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        public boolean isEmpty() {
+            for (int polygons : polygonCounts) {
+                if (polygons != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public void reset() {
+            boolean shrink = ++resetsSinceShrink >= PolygonMeshBuffer.SHRINK_INTERVAL;
+            if (shrink) {
+                resetsSinceShrink = 0;
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] != null) {
+                    peakBytes[i] = Math.max(peakBytes[i], buckets[i].position());
+                    if (buckets[i].position() != 0) {
+                        writers[i].reset();
+                    }
+                    if (shrink) {
+                        // Drop regions that have grown much larger than recent chunks needed, they get recreated on demand
+                        if (buckets[i].capacity() > INITIAL_CAPACITY && buckets[i].capacity() > peakBytes[i] * 4) {
+                            buckets[i] = null;
+                            writers[i] = null;
+                        }
+                        peakBytes[i] = 0;
+                    }
+                }
+                polygonCounts[i] = 0;
+            }
         }
     }
 
@@ -5,6 +5,7 @@ import java.util.Comparator;
 public class Comparators {
     public static final MeshDistanceComparator MESH_DISTANCE_COMPARATOR = new MeshDistanceComparator();
     public static final RegionDistanceComparator REGION_DISTANCE_COMPARATOR = new RegionDistanceComparator();
+    public static final MeshEvictionComparator MESH_EVICTION_COMPARATOR = new MeshEvictionComparator();
     
     public static class MeshDistanceComparator implements Comparator<Mesh> {
         double x, y, z;
@@ -46,6 +47,26 @@ public class Comparators {
         
     }
     
+    /** Orders meshes by how good of a choice they are for eviction: hidden ones first, then the farthest ones. */
+    public static class MeshEvictionComparator implements Comparator<Mesh> {
+        double x, y, z;
+
+        public MeshEvictionComparator setOrigin(double x, double y, double z) {
+            this.x = x / 16.0;
+            this.y = y / 16.0;
+            this.z = z / 16.0;
+            return this;
+        }
+
+        @Override
+        public int compare(Mesh a, Mesh b) {
+            if(a.visible != b.visible) {
+                return a.visible ? 1 : -1;
+            }
+            return Double.compare(b.distSq(x, y, z), a.distSq(x, y, z));
+        }
+    }
+    
     public static class RegionDistanceComparator implements Comparator<NeoRegion> {
         double x, y, z;
 
@@ -0,0 +1,202 @@
+package makamys.neodymium.renderer;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Keeps track of which byte ranges of a buffer are free. Free blocks are indexed both by offset (to coalesce
+ * neighbours when a range is freed) and by size (to find the best fit when allocating), so both operations are
+ * O(log n) in the number of free blocks.
+ * <p>
+ * Manages the range from {@code start} to {@code end}, so several allocators can share one buffer. Doesn't touch
+ * OpenGL, the caller is responsible for moving the data around.
+ */
+public class FreeListAllocator {
+    private static final Comparator<Block> BY_SIZE = Comparator.comparingLong((Block b) -> b.size).thenComparingLong(b -> b.offset);
+
+    private final TreeMap<Long, Block> freeByOffset = new TreeMap<>();
+    private final TreeSet<Block> freeBySize = new TreeSet<>(BY_SIZE);
+
+    private final long start;
+    private long end;
+    private long freeBytes;
+
+    public FreeListAllocator(long capacity) {
+        this(0, capacity);
+    }
+
+    public FreeListAllocator(long start, long end) {
+        this.start = start;
+        this.end = end;
+        if(end > start) {
+            addFree(start, end - start);
+        }
+    }
+
+    /** @return The offset of the allocated range, or -1 if there is no free block large enough. */
+    public long allocate(long size) {
+        Block block = freeBySize.ceiling(new Block(-1, size));
+        if(block == null)
+            return -1;
+
+        removeFree(block);
+        if(block.size > size) {
+            addFree(block.offset + size, block.size - size);
+        }
+        return block.offset;
+    }
+
+    /**
+     * Like {@link #allocate(long)}, but only considers free blocks that end at or before {@code limit}.
+     * @return The offset of the allocated range, or -1 if there is no such block large enough.
+     */
+    public long allocateBelow(long size, long limit) {
+        for(Block block : freeBySize.tailSet(new Block(-1, size))) {
+            if(block.offset + size <= limit) {
+                removeFree(block);
+                if(block.size > size) {
+                    addFree(block.offset + size, block.size - size);
+                }
+                return block.offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Allocates a specific range, which has to be free.
+     * @return Whether the range was free.
+     */
+    public boolean allocateAt(long offset, long size) {
+        Map.Entry<Long, Block> entry = freeByOffset.floorEntry(offset);
+        if(entry == null)
+            return false;
+        Block block = entry.getValue();
+        if(block.offset + block.size < offset + size)
+            return false;
+
+        removeFree(block);
+        if(offset > block.offset) {
+            addFree(block.offset, offset - block.offset);
+        }
+        if(block.offset + block.size > offset + size) {
+            addFree(offset + size, block.offset + block.size - (offset + size));
+        }
+        return true;
+    }
+
+    /** Returns a range to the free list, merging it with the free blocks right before and after it. */
+    public void free(long offset, long size) {
+        if(size <= 0)
+            return;
+
+        long start = offset;
+        long end = offset + size;
+
+        Map.Entry<Long, Block> before = freeByOffset.lowerEntry(offset);
+        if(before != null && before.getValue().offset + before.getValue().size == offset) {
+            start = before.getValue().offset;
+            removeFree(before.getValue());
+        }
+        Block after = freeByOffset.get(end);
+        if(after != null) {
+            end += after.size;
+            removeFree(after);
+        }
+        addFree(start, end - start);
+    }
+
+    /** Moves the end of the managed range further out, adding the space in between. */
+    public void grow(long newEnd) {
+        if(newEnd <= end)
+            return;
+
+        long oldEnd = end;
+        end = newEnd;
+        free(oldEnd, newEnd - oldEnd);
+    }
+
+    /** @return Whether the offset is within the managed range. */
+    public boolean contains(long offset) {
+        return offset >= start && offset < end;
+    }
+
+    /** @return The size of the free block that ends exactly at the given offset, or 0 if there is none. */
+    public long freeBytesBefore(long offset) {
+        Map.Entry<Long, Block> before = freeByOffset.lowerEntry(offset);
+        if(before != null && before.getValue().offset + before.getValue().size == offset) {
+            return before.getValue().size;
+        }
+        return 0;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getCapacity() {
+        return end - start;
+    }
+
+    public long getFreeBytes() {
+        return freeBytes;
+    }
+
+    public long getUsedBytes() {
+        return end - start - freeBytes;
+    }
+
+    public int getFreeBlockCount() {
+        return freeByOffset.size();
+    }
+
+    public long getLargestFreeBlock() {
+        return freeBySize.isEmpty() ? 0 : freeBySize.last().size;
+    }
+
+    /** @return The end of the last allocated range. */
+    public long getHighWaterMark() {
+        Map.Entry<Long, Block> last = freeByOffset.lastEntry();
+        if(last != null && last.getValue().offset + last.getValue().size == end) {
+            return last.getKey();
+        }
+        return end;
+    }
+
+    /**
+     * @return The share of the free space that can't be used for an allocation as big as all of it, from 0 (all free
+     * space is in one block) to almost 1.
+     */
+    public double getFragmentation() {
+        return freeBytes == 0 ? 0 : 1.0 - (double)getLargestFreeBlock() / freeBytes;
+    }
+
+    private void addFree(long offset, long size) {
+        Block block = new Block(offset, size);
+        freeByOffset.put(offset, block);
+        freeBySize.add(block);
+        freeBytes += size;
+    }
+
+    private void removeFree(Block block) {
+        freeByOffset.remove(block.offset);
+        freeBySize.remove(block);
+        freeBytes -= block.size;
+    }
+
+    private static class Block {
+        private final long offset;
+        private final long size;
+
+        private Block(long offset, long size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+}
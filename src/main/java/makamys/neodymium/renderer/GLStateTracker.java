@@ -0,0 +1,80 @@
+package makamys.neodymium.renderer;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Remembers the fog settings as {@link net.minecraft.client.renderer.EntityRenderer#setupFog} sets them, so the
+ * renderer doesn't have to read them back from OpenGL every frame. Fed by
+ * {@link makamys.neodymium.mixin.MixinEntityRenderer}.
+ */
+public class GLStateTracker {
+    private static boolean hasFog;
+    private static int fogMode = GL_EXP;
+    private static float fogStart = 0;
+    private static float fogEnd = 1;
+    private static float fogDensity = 1;
+    private static final float[] fogColor = new float[4];
+
+    public static void onFogi(int pname, int param) {
+        if (pname == GL_FOG_MODE) {
+            fogMode = param;
+            hasFog = true;
+        }
+    }
+
+    public static void onFogf(int pname, float param) {
+        switch (pname) {
+            case GL_FOG_START:
+                fogStart = param;
+                break;
+            case GL_FOG_END:
+                fogEnd = param;
+                break;
+            case GL_FOG_DENSITY:
+                fogDensity = param;
+                break;
+            default:
+                return;
+        }
+        hasFog = true;
+    }
+
+    public static void onFog(int pname, FloatBuffer params) {
+        if (pname == GL_FOG_COLOR) {
+            for (int i = 0; i < 4; i++) {
+                fogColor[i] = params.get(params.position() + i);
+            }
+            hasFog = true;
+        }
+    }
+
+    /** @return Whether the fog has been set up at least once, so the tracked values mean something. */
+    public static boolean hasFog() {
+        return hasFog;
+    }
+
+    public static int getFogMode() {
+        return fogMode;
+    }
+
+    public static float getFogStart() {
+        return fogStart;
+    }
+
+    public static float getFogEnd() {
+        return fogEnd;
+    }
+
+    public static float getFogDensity() {
+        return fogDensity;
+    }
+
+    /** Writes the fog color to the buffer, starting at index 0. Doesn't change the position of the buffer. */
+    public static void getFogColor(FloatBuffer out) {
+        for (int i = 0; i < 4; i++) {
+            out.put(i, fogColor[i]);
+        }
+    }
+}
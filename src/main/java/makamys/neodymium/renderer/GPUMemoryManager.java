@@ -3,16 +3,23 @@ package makamys.neodymium.renderer;
 import lombok.val;
 import lombok.var;
 import makamys.neodymium.Neodymium;
+import makamys.neodymium.config.Config;
 import makamys.neodymium.renderer.Mesh.GPUStatus;
 import makamys.neodymium.util.GuiHelper;
+import net.minecraft.client.Minecraft;
 import org.lwjgl.BufferUtils;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
+import static makamys.neodymium.Constants.LOGGER;
 import static makamys.neodymium.config.Config.bufferSizePass0;
 import static makamys.neodymium.config.Config.bufferSizePass1;
 import static org.lwjgl.opengl.GL11.*;
@@ -20,7 +27,14 @@ import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL30.*;
 import static org.lwjgl.opengl.GL31.*;
 
-/** Manages dynamic memory allocation inside a buffer on the GPU. */
+/**
+ * Manages dynamic memory allocation inside a buffer on the GPU.
+ * <p>
+ * The buffer is split into two arenas. The small hot arena at the start holds the meshes of sections that were rebuilt
+ * recently, which tend to be rebuilt again soon. The cold arena after it holds everything else. Meshes that stay in
+ * the hot arena for long enough without being rebuilt get promoted to the cold arena. This way the holes left behind
+ * by frequent rebuilds are mostly in the hot arena, and compaction rarely has to move the bulk of the terrain.
+ */
 public class GPUMemoryManager {
     private static final long MEGABYTE = 1024 * 1024L;
     private static final long[] BUFFER_SIZE_BYTES = {
@@ -28,46 +42,99 @@ public class GPUMemoryManager {
             bufferSizePass1 * MEGABYTE
     };
 
+    static final long MIN_BUFFER_SIZE_BYTES = 16 * MEGABYTE;
+    /** A rough guess of how many quads a column of chunks has, used to size buffers if there is no history yet. */
+    private static final int[] ESTIMATED_QUADS_PER_COLUMN = {2048, 128};
+
+    /** The highest amount of the buffer the last destroyed manager of each pass used. */
+    private static final long[] recentPeakBytes = new long[2];
+
     private static final int INDEX_ALLOCATION_SIZE_BYTES = 512 * 4;
 
-    private static final long USED_VRAM_UPDATE_RATE = 1_000_000_000L;
+    /** The size of a DrawElementsIndirectCommand, in ints. */
+    public static final int INDIRECT_COMMAND_SIZE = 5;
+
+    private static final int MIN_QUAD_INDEX_COUNT = 16384;
+
+    /** The least number of meshes checked for pending deletion per GC pass. */
+    private static final int MIN_SWEEP_CHECKS = 64;
+    /** The most number of meshes considered for moving per GC pass. */
+    private static final int MAX_COMPACTION_CHECKS = 64;
+
+    private static final long COMPACTION_RATE_UPDATE_INTERVAL = 1_000_000_000L;
+    /** How long the space of a replaced mesh is held for its replacement before it's given up. */
+    private static final long RESERVATION_TIMEOUT = 5_000_000_000L;
 
     private static int copyBuffer = GL_ZERO;
     private static long copyBufferSize = 0;
 
-    private final List<Mesh> sentMeshes = new ArrayList<>();
+    private static int quadIndexBuffer = GL_ZERO;
+    private static int quadIndexBufferQuads = 0;
 
-    private final long bufferSizeBytes;
+    /** The meshes in the VBO, by offset. */
+    private final TreeMap<Long, Mesh> sentMeshes = new TreeMap<>();
+    /** The space of replaced meshes, held for the meshes that replace them. */
+    private final Map<ChunkMesh, Reservation> reservations = new IdentityHashMap<>();
+
+    private long bufferSizeBytes;
+    private final long maxBufferSizeBytes;
+    private final Arena hot;
+    private final Arena cold;
+    private long peakBytes = 0;
 
     public final int managerIndex;
     public final int pass;
     public final int drawMode;
     public final int verticesPerPolygon;
+    /** Whether the meshes are quads that have to be drawn through the quad index buffer. */
+    public final boolean indexed;
+    public final int elementsPerPolygon;
 
     private int indexSize;
 
-    private int nextMesh = 0;
-
-    private long usedVRAM = 0;
-    private long lastUsedVRAMUpdate = 0;
+    /** The offset the next sweep continues upwards from. */
+    private long sweepCursor = -1;
+    /** The offset the next promotion pass continues upwards from. */
+    private long promotionCursor = -1;
+
+    private long bytesMoved = 0;
+    private long totalBytesMoved = 0;
+    private long uploadBytesThisFrame = 0;
+    private long uploadBytesLastFrame = 0;
+    private long totalUploadBytes = 0;
+    private int failedPlacements = 0;
+    private int replacementHits = 0;
+    private int replacementMisses = 0;
+    private int promotions = 0;
+    private long promotedBytes = 0;
+    private long lastCompactionRateUpdate = 0;
+    private long compactionBytesPerSecond = 0;
 
     public int VAO = GL_ZERO;
     public int VBO = GL_ZERO;
+    /** The draw commands of the multi-draw-indirect path. Only created if that path is used. */
+    public int indirectBuffer = GL_ZERO;
+    /** The render offset of each region drawn by the multi-draw-indirect path, indexed by the base instance. */
+    public int regionOffsetBuffer = GL_ZERO;
 
     public IntBuffer piFirst = null;
     public IntBuffer piCount = null;
+    /**
+     * Scratch space for building indirect draw commands out of piFirst and piCount. Only used if indexed or if the
+     * multi-draw-indirect path is used.
+     */
+    public IntBuffer piCommands = null;
 
     public GPUMemoryManager(int managerIndex, int pass, int drawMode, int verticesPerPolygon) throws Exception {
-        this.bufferSizeBytes = BUFFER_SIZE_BYTES[pass];
-
-        this.managerIndex = managerIndex;
-        this.pass = pass;
-        this.drawMode = drawMode;
-        this.verticesPerPolygon = verticesPerPolygon;
+        this(managerIndex, pass, drawMode, verticesPerPolygon, initialBufferSize(pass, verticesPerPolygon, Math.min(BUFFER_SIZE_BYTES[pass], Neodymium.renderer.getVRAMHeadroom(pass))));
 
         try {
             this.VBO = createVBO(bufferSizeBytes);
             this.VAO = createVAO();
+            if (Neodymium.renderer.isMultiDrawIndirectEnabled()) {
+                this.indirectBuffer = glGenBuffers();
+                this.regionOffsetBuffer = glGenBuffers();
+            }
         } catch (Exception e) {
             destroyImpl();
             throw e;
@@ -80,49 +147,48 @@ public class GPUMemoryManager {
         piCount.flip();
     }
 
+    /** Sets up the bookkeeping of the manager, but none of its GL objects or index buffers. */
+    GPUMemoryManager(int managerIndex, int pass, int drawMode, int verticesPerPolygon, long bufferSizeBytes) {
+        this.maxBufferSizeBytes = BUFFER_SIZE_BYTES[pass];
+        this.bufferSizeBytes = bufferSizeBytes;
+        val hotSizeBytes = hotArenaSize(bufferSizeBytes);
+        this.hot = new Arena(new FreeListAllocator(0, hotSizeBytes));
+        this.cold = new Arena(new FreeListAllocator(hotSizeBytes, bufferSizeBytes));
+
+        this.managerIndex = managerIndex;
+        this.pass = pass;
+        this.drawMode = drawMode;
+        this.verticesPerPolygon = verticesPerPolygon;
+        this.indexed = drawMode == GL_QUADS;
+        this.elementsPerPolygon = indexed ? 6 : verticesPerPolygon;
+    }
+
     public boolean uploadMesh(Mesh mesh) {
         if(mesh == null || mesh.buffer == null || mesh.verticesPerPolygon != verticesPerPolygon)
             return false;
 
-        if(end() + mesh.bufferSize() >= bufferSizeBytes)
-            return false;
-
-        val size = mesh.bufferSize();
-        var insertIndex = -1;
-
-        var nextBase = -1L;
-        if(!sentMeshes.isEmpty()) {
-            if(nextMesh < sentMeshes.size() - 1) {
-                val meshA = sentMeshes.get(nextMesh);
-                Mesh meshB = null;
-                for(var i = nextMesh + 1; i < sentMeshes.size(); i++) {
-                    val meshC = sentMeshes.get(i);
-                    if(meshC.gpuStatus == Mesh.GPUStatus.SENT) {
-                        meshB = meshC;
-                        break;
-                    }
-                }
-                if(meshB != null && meshB.offset - meshA.getEnd() >= size) {
-                    nextBase = meshA.getEnd();
-                    insertIndex = nextMesh + 1;
-                }
-            }
-
-            if(nextBase == -1)
-                nextBase = sentMeshes.get(sentMeshes.size() - 1).getEnd();
-        }
-        if (nextBase == -1)
-            nextBase = 0;
-
         if (mesh.gpuStatus == GPUStatus.UNSENT) {
-            uploadMeshToVBO(mesh, nextBase);
-
-            if (insertIndex == -1) {
-                sentMeshes.add(mesh);
-            } else {
-                sentMeshes.add(insertIndex, mesh);
-                nextMesh = insertIndex;
+            val size = allocationSize(mesh);
+            val rebuilt = hasReservation(mesh);
+            var offset = takeReservation(mesh, size);
+            // A section that was just rebuilt is likely to be rebuilt again soon, so keep it where its holes are cheap to close
+            if (offset == -1 && rebuilt)
+                offset = hot.allocator.allocate(size);
+            if (offset == -1)
+                offset = cold.allocator.allocate(size);
+            if (offset == -1 && grow(size))
+                offset = cold.allocator.allocate(size);
+            if (offset == -1) {
+                failedPlacements++;
+                return false;
             }
+
+            uploadMeshToVBO(mesh, offset);
+            uploadBytesThisFrame += mesh.bufferSize();
+            totalUploadBytes += mesh.bufferSize();
+            sentMeshes.put(offset, mesh);
+            mesh.placedTime = System.nanoTime();
+            peakBytes = Math.max(peakBytes, cold.allocator.getHighWaterMark());
         }
 
         mesh.gpuStatus = GPUStatus.SENT;
@@ -130,11 +196,72 @@ public class GPUMemoryManager {
         return true;
     }
 
+    /** Frees the space of the mesh right away. Its buffer is left alone, that's up to the owner of the mesh. */
     public void deleteMesh(Mesh mesh) {
         if(mesh == null || mesh.gpuStatus == GPUStatus.UNSENT)
             return;
-        mesh.gpuStatus = GPUStatus.PENDING_DELETE;
+        releaseMesh(mesh, true);
+        mesh.attachedManager = null;
+    }
+
+    /**
+     * Deletes the mesh, but keeps its space reserved for the mesh replacing it. If the replacement fits there when
+     * it gets uploaded, it goes to the same place, and no hole is left behind.
+     */
+    public void deleteMeshForReplacement(Mesh mesh, ChunkMesh replacement) {
+        if(mesh == null || mesh.gpuStatus != GPUStatus.SENT) {
+            deleteMesh(mesh);
+            return;
+        }
+        val reservation = new Reservation(mesh.offset, allocationSize(mesh), replacement.getGeneration(), System.nanoTime());
+        releaseMesh(mesh, false);
         mesh.attachedManager = null;
+
+        val previous = reservations.put(replacement, reservation);
+        if (previous != null) {
+            arenaOf(previous.offset).allocator.free(previous.offset, previous.size);
+        }
+    }
+
+    public boolean hasReservation(Mesh mesh) {
+        return !reservations.isEmpty() && reservations.containsKey(mesh);
+    }
+
+    /** @return The offset of the space reserved for the mesh if it fits there, otherwise -1. */
+    private long takeReservation(Mesh mesh, long size) {
+        if (reservations.isEmpty())
+            return -1;
+        val reservation = reservations.remove(mesh);
+        if (reservation == null)
+            return -1;
+
+        // The space right after the old mesh may have been freed since, so the new one can be a bit bigger
+        val allocator = arenaOf(reservation.offset).allocator;
+        allocator.free(reservation.offset, reservation.size);
+        if (reservation.generation == ((ChunkMesh) mesh).getGeneration() && allocator.allocateAt(reservation.offset, size)) {
+            replacementHits++;
+            return reservation.offset;
+        }
+        replacementMisses++;
+        return -1;
+    }
+
+    /** Gives up the reservations whose mesh was destroyed or didn't get uploaded in time. */
+    private void expireReservations() {
+        if (reservations.isEmpty())
+            return;
+
+        val t = System.nanoTime();
+        for (Iterator<Map.Entry<ChunkMesh, Reservation>> it = reservations.entrySet().iterator(); it.hasNext(); ) {
+            val entry = it.next();
+            val mesh = entry.getKey();
+            val reservation = entry.getValue();
+            if (mesh.isDestroyed() || mesh.getGeneration() != reservation.generation || t - reservation.time > RESERVATION_TIMEOUT) {
+                arenaOf(reservation.offset).allocator.free(reservation.offset, reservation.size);
+                replacementMisses++;
+                it.remove();
+            }
+        }
     }
 
     public void growIndexBuffers() {
@@ -146,45 +273,216 @@ public class GPUMemoryManager {
         piCount.limit(piCount.capacity());
     }
 
+    /**
+     * Frees meshes that were destroyed without being deleted, promotes meshes that have been in the hot arena for long
+     * enough, and moves meshes from the top of each arena into gaps further down once its free space gets too
+     * fragmented. A non-full pass only moves as much data as the per-frame budget allows, and the next one continues
+     * where it left off.
+     */
     public void runGC(boolean full) {
-        var moved = 0;
-        var timesReachedEnd = 0;
-        var checksLeft = sentMeshes.size();
-
-        while ((!full && moved < 32 && checksLeft > 0) || full && timesReachedEnd < 2 && !sentMeshes.isEmpty()) {
-            checksLeft--;
-            nextMesh++;
-            if (nextMesh >= sentMeshes.size()) {
-                nextMesh = 0;
-                timesReachedEnd++;
+        uploadBytesLastFrame = uploadBytesThisFrame;
+        uploadBytesThisFrame = 0;
+
+        expireReservations();
+        sweep(full ? sentMeshes.size() : Math.max(MIN_SWEEP_CHECKS, sentMeshes.size() / 4));
+
+        val startTime = System.nanoTime();
+        var bytesLeft = full ? Long.MAX_VALUE : Config.compactionKilobytesPerFrame * 1024L;
+        bytesLeft = promote(full, bytesLeft, startTime);
+        if (full || hot.compactionRequested || hot.allocator.getFragmentation() * 100 > Config.compactionThreshold) {
+            bytesLeft = compact(hot, full, bytesLeft, startTime);
+        }
+        if (full || cold.compactionRequested || cold.allocator.getFragmentation() * 100 > Config.compactionThreshold) {
+            compact(cold, full, bytesLeft, startTime);
+        }
+
+        val t = System.nanoTime();
+        if (t - lastCompactionRateUpdate > COMPACTION_RATE_UPDATE_INTERVAL) {
+            compactionBytesPerSecond = lastCompactionRateUpdate == 0 ? 0 : bytesMoved * 1_000_000_000L / (t - lastCompactionRateUpdate);
+            bytesMoved = 0;
+            lastCompactionRateUpdate = t;
+        }
+    }
+
+    private void sweep(int checks) {
+        var checksLeft = Math.min(checks, sentMeshes.size());
+        while (checksLeft-- > 0) {
+            var entry = sentMeshes.higherEntry(sweepCursor);
+            if (entry == null) {
+                entry = sentMeshes.firstEntry();
             }
-            val mesh = sentMeshes.get(nextMesh);
+            val mesh = entry.getValue();
+            sweepCursor = entry.getKey();
 
-            if (mesh.gpuStatus == GPUStatus.SENT) {
-                val offset = nextMesh == 0 ? 0 : sentMeshes.get(nextMesh - 1).getEnd();
-                if (mesh.offset != offset) {
-                    moveMeshInVBO(mesh, offset);
-                    moved++;
-                }
-            } else if (mesh.gpuStatus == GPUStatus.PENDING_DELETE) {
-                deleteMeshFromVBO(mesh);
-                sentMeshes.remove(nextMesh);
-                if (nextMesh > 0)
-                    nextMesh--;
+            if (mesh.gpuStatus == GPUStatus.PENDING_DELETE) {
+                releaseMesh(mesh, true);
+                mesh.destroyBuffer();
             }
         }
     }
 
-    public List<String> debugText() {
-        final long t = System.nanoTime();
-        if(t - lastUsedVRAMUpdate > USED_VRAM_UPDATE_RATE) {
-            usedVRAM = 0;
-            for(Mesh mesh : sentMeshes) {
-                usedVRAM += mesh.bufferSize();
+    /**
+     * Moves the meshes of the hot arena that weren't rebuilt for {@link Config#hotArenaPromotionSeconds} into the best
+     * fitting gap of the cold arena.
+     * @return The part of the byte budget that's left.
+     */
+    private long promote(boolean full, long bytesLeft, long startTime) {
+        if (hot.allocator.getCapacity() == 0)
+            return bytesLeft;
+
+        val meshes = hot.meshes();
+        val minAge = Config.hotArenaPromotionSeconds * 1_000_000_000L;
+        val t = System.nanoTime();
+        var checksLeft = full ? meshes.size() : MAX_COMPACTION_CHECKS;
+
+        while (checksLeft-- > 0 && !isOverBudget(full, bytesLeft, startTime)) {
+            var entry = meshes.higherEntry(promotionCursor);
+            if (entry == null) {
+                entry = meshes.firstEntry();
+            }
+            if (entry == null)
+                break;
+            val mesh = entry.getValue();
+            promotionCursor = entry.getKey();
+
+            if (mesh.gpuStatus != GPUStatus.SENT || t - mesh.placedTime < minAge)
+                continue;
+
+            val size = allocationSize(mesh);
+            if (size > bytesLeft)
+                continue;
+
+            val newOffset = cold.allocator.allocate(size);
+            if (newOffset == -1)
+                continue;
+
+            hot.allocator.free(mesh.offset, size);
+            sentMeshes.remove(mesh.offset);
+            moveMeshInVBO(mesh, newOffset);
+            sentMeshes.put(newOffset, mesh);
+
+            bytesLeft -= size;
+            promotions++;
+            promotedBytes += mesh.bufferSize();
+            bytesMoved += mesh.bufferSize();
+            totalBytesMoved += mesh.bufferSize();
+        }
+        return bytesLeft;
+    }
+
+    /**
+     * Walks down from the top of the arena, moving each mesh into the best fitting gap below it. Small meshes fill
+     * small gaps this way, and the space they leave behind merges with the free space at the top.
+     * @return The part of the byte budget that's left.
+     */
+    private long compact(Arena arena, boolean full, long bytesLeft, long startTime) {
+        val meshes = arena.meshes();
+        var checksLeft = full ? meshes.size() : MAX_COMPACTION_CHECKS;
+
+        while (checksLeft-- > 0 && !isOverBudget(full, bytesLeft, startTime)) {
+            var entry = meshes.lowerEntry(arena.compactionCursor);
+            if (entry == null) {
+                // Made it all the way down
+                arena.compactionRequested = false;
+                entry = meshes.lastEntry();
+            }
+            if (entry == null)
+                break;
+            val mesh = entry.getValue();
+            arena.compactionCursor = entry.getKey();
+
+            if (mesh.gpuStatus != GPUStatus.SENT)
+                continue;
+
+            val size = allocationSize(mesh);
+            if (size > bytesLeft)
+                continue;
+
+            val newOffset = arena.allocator.allocateBelow(size, mesh.offset);
+            if (newOffset == -1)
+                continue;
+
+            arena.allocator.free(mesh.offset, size);
+            sentMeshes.remove(mesh.offset);
+            moveMeshInVBO(mesh, newOffset);
+            sentMeshes.put(newOffset, mesh);
+
+            bytesLeft -= size;
+            arena.bytesMoved += mesh.bufferSize();
+            bytesMoved += mesh.bufferSize();
+            totalBytesMoved += mesh.bufferSize();
+        }
+        return bytesLeft;
+    }
+
+    private static boolean isOverBudget(boolean full, long bytesLeft, long startTime) {
+        return !full && (bytesLeft <= 0 || System.nanoTime() - startTime > Config.compactionMicrosPerFrame * 1000L);
+    }
+
+    /** @return The number of bytes taken up by meshes. */
+    public long getUsedBytes() {
+        return hot.allocator.getUsedBytes() + cold.allocator.getUsedBytes();
+    }
+
+    /** @return The size of the VBO. This is what counts against the VRAM budget, not just the part in use. */
+    public long getBufferSizeBytes() {
+        return bufferSizeBytes;
+    }
+
+    /**
+     * Makes the next GC passes compact both arenas from the top down, however fragmented they are. Used when a mesh
+     * didn't fit and the VRAM budget doesn't allow for a bigger buffer.
+     */
+    public void requestCompaction() {
+        for (val arena : new Arena[]{hot, cold}) {
+            if (!arena.compactionRequested) {
+                arena.compactionRequested = true;
+                arena.compactionCursor = Long.MAX_VALUE;
             }
-            lastUsedVRAMUpdate = t;
         }
-        return Collections.singletonList("PASS " + pass + ": " + (usedVRAM / 1024 / 1024) + "MB (" + (end() / 1024 / 1024) + "MB) / " + (bufferSizeBytes / 1024 / 1024) + "MB");
+    }
+
+    public MemoryStats getStats() {
+        val stats = new MemoryStats();
+        stats.managerIndex = managerIndex;
+        stats.pass = pass;
+        stats.capacity = bufferSizeBytes;
+        stats.maxCapacity = maxBufferSizeBytes;
+        stats.liveBytes = getUsedBytes();
+        stats.hotCapacity = hot.allocator.getCapacity();
+        stats.hotLiveBytes = hot.allocator.getUsedBytes();
+        stats.meshes = sentMeshes.size();
+        stats.holes = getFreeBlockCount();
+        stats.largestFreeBlock = getLargestFreeBlock();
+        stats.fragmentation = getFragmentation();
+        stats.bytesMovedByGC = totalBytesMoved;
+        stats.bytesMovedHot = hot.bytesMoved;
+        stats.bytesMovedCold = cold.bytesMoved;
+        stats.promotions = promotions;
+        stats.bytesPromoted = promotedBytes;
+        stats.uploadBytesLastFrame = uploadBytesLastFrame;
+        stats.uploadBytesTotal = totalUploadBytes;
+        stats.failedPlacements = failedPlacements;
+        stats.replacementHits = replacementHits;
+        stats.replacementMisses = replacementMisses;
+        return stats;
+    }
+
+    public List<String> debugText() {
+        return Collections.singletonList("PASS " + pass + ": " + (getUsedBytes() / 1024 / 1024) + "MB (" + (cold.allocator.getHighWaterMark() / 1024 / 1024) + "MB) / " + (bufferSizeBytes / 1024 / 1024) + "MB (max " + (maxBufferSizeBytes / 1024 / 1024) + "MB), " + getFreeBlockCount() + " holes, hot " + (hot.allocator.getUsedBytes() / 1024) + "/" + (hot.allocator.getCapacity() / 1024) + "KB, " + promotions + " promoted, compacting " + (compactionBytesPerSecond / 1024) + "KB/s, replaced in place " + replacementHits + "/" + (replacementHits + replacementMisses));
+    }
+
+    private int getFreeBlockCount() {
+        return hot.allocator.getFreeBlockCount() + cold.allocator.getFreeBlockCount();
+    }
+
+    private long getLargestFreeBlock() {
+        return Math.max(hot.allocator.getLargestFreeBlock(), cold.allocator.getLargestFreeBlock());
+    }
+
+    private double getFragmentation() {
+        val freeBytes = hot.allocator.getFreeBytes() + cold.allocator.getFreeBytes();
+        return freeBytes == 0 ? 0 : 1.0 - (double)getLargestFreeBlock() / freeBytes;
     }
 
     public int drawDebugInfo(int yOff) {
@@ -194,14 +492,13 @@ public class GPUMemoryManager {
         int height = (int)(bufferSizeBytes / scale) / rowLength;
         GuiHelper.drawRectangle(0, yOff, rowLength, height, 0x000000, 50);
 
-        int meshI = 0;
-        for(Mesh mesh : sentMeshes) {
+        for(Mesh mesh : sentMeshes.values()) {
 
             int o = (int)(mesh.offset / 10000);
             int o2 = (int)((mesh.offset + mesh.bufferSize()) / 10000);
             if(o / rowLength == o2 / rowLength) {
                 if(mesh.gpuStatus != Mesh.GPUStatus.PENDING_DELETE) {
-                    GuiHelper.drawRectangle(o % rowLength, o / rowLength + yOff, mesh.buffer.limit() / scale + 1, 1, meshI == nextMesh ? 0x00FF00 : 0xFFFFFF);
+                    GuiHelper.drawRectangle(o % rowLength, o / rowLength + yOff, mesh.bufferSize() / scale + 1, 1, mesh.offset == hot.compactionCursor || mesh.offset == cold.compactionCursor ? 0x00FF00 : hot.allocator.contains(mesh.offset) ? 0xFF8000 : 0xFFFFFF);
                 }
             } else {
                 for(int i = o; i < o2; i++) {
@@ -212,7 +509,6 @@ public class GPUMemoryManager {
                     }
                 }
             }
-            meshI++;
         }
         GuiHelper.drawRectangle(0 % rowLength, 0 + yOff, 4, 4, 0x00FF00);
         GuiHelper.drawRectangle((int)(bufferSizeBytes / scale) % rowLength, (int)(bufferSizeBytes / scale) / rowLength + yOff, 4, 4, 0xFF0000);
@@ -220,7 +516,22 @@ public class GPUMemoryManager {
     }
 
     public void destroy() {
+        recentPeakBytes[pass] = peakBytes;
         destroyCopyBuffer();
+        destroyQuadIndexBuffer();
+        UploadRing.destroy();
+
+        for (val mesh : sentMeshes.values()) {
+            // The data of these is gone along with the VBO
+            if (mesh.gpuStatus == GPUStatus.SENT) {
+                mesh.gpuStatus = GPUStatus.UNSENT;
+                mesh.attachedManager = null;
+                mesh.iFirst = -1;
+                mesh.offset = -1;
+            }
+        }
+        sentMeshes.clear();
+        reservations.clear();
 
         if (Neodymium.renderer != null) {
             NeoRenderer.submitTask(this::destroyImpl, 60);
@@ -229,40 +540,114 @@ public class GPUMemoryManager {
         }
     }
 
+    /**
+     * Makes room for an allocation of the given size by moving the data into a bigger VBO. The size is doubled until
+     * it fits, but doesn't go past the configured maximum or the VRAM budget. If the budget is what stops it, the
+     * arenas get compacted instead, so the holes in them can take the allocation later.
+     * @return Whether the VBO was grown.
+     */
+    private boolean grow(long requiredBytes) {
+        // The cold arena is the one at the end, so this includes the hot arena too
+        val usedBytes = cold.allocator.getHighWaterMark();
+        val neededBytes = usedBytes + requiredBytes;
+        var newSize = bufferSizeBytes;
+        while (newSize < neededBytes) {
+            newSize *= 2;
+        }
+        newSize = Math.min(newSize, maxBufferSizeBytes);
+        if (newSize < neededBytes)
+            return false;
+
+        val headroom = Neodymium.renderer.getVRAMHeadroom(pass);
+        if (newSize - bufferSizeBytes > headroom) {
+            newSize = bufferSizeBytes + headroom;
+            if (newSize < neededBytes) {
+                requestCompaction();
+                return false;
+            }
+        }
+
+        int newVBO;
+        try {
+            newVBO = createVBO(newSize);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to grow buffer of pass " + pass + " to " + newSize / MEGABYTE + "MB: " + e.getMessage());
+            return false;
+        }
+
+        if (usedBytes > 0) {
+            glBindBuffer(GL_COPY_READ_BUFFER, VBO);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, newVBO);
+            glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, usedBytes);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, GL_ZERO);
+            glBindBuffer(GL_COPY_READ_BUFFER, GL_ZERO);
+        }
+        glDeleteBuffers(VBO);
+
+        VBO = newVBO;
+        bufferSizeBytes = newSize;
+        cold.allocator.grow(newSize);
+        // The attribute pointers still refer to the old VBO
+        Neodymium.renderer.setupVertexArray(this);
+        return true;
+    }
+
     private void uploadMeshToVBO(Mesh mesh, long offset) {
         mesh.prepareBuffer();
         if (mesh.bufferSize() > 0)
             copyBytesToVBO(offset, mesh.buffer);
 
         mesh.iFirst = (int) (offset / Neodymium.renderer.getStride());
-        mesh.iCount = mesh.polygonCount * verticesPerPolygon;
+        mesh.iCount = mesh.polygonCount * elementsPerPolygon;
         mesh.offset = offset;
+
+        if (indexed)
+            prepareQuadIndexBuffer(mesh.polygonCount);
     }
 
-    private void deleteMeshFromVBO(Mesh mesh) {
-        deleteBytesFromVBO(mesh.offset, mesh.bufferSize());
+    private void releaseMesh(Mesh mesh, boolean freeSpace) {
+        sentMeshes.remove(mesh.offset);
+        if (freeSpace)
+            arenaOf(mesh.offset).allocator.free(mesh.offset, allocationSize(mesh));
         mesh.iFirst = -1;
         mesh.offset = -1;
         mesh.visible = false;
         mesh.gpuStatus = GPUStatus.UNSENT;
-        mesh.destroyBuffer();
+    }
+
+    private Arena arenaOf(long offset) {
+        return hot.allocator.contains(offset) ? hot : cold;
+    }
+
+    /** Empty meshes still take up one vertex, so that every mesh has an offset of its own. */
+    private static long allocationSize(Mesh mesh) {
+        return Math.max(mesh.bufferSize(), Neodymium.renderer.getStride());
     }
 
     private void reAllocIndexBuffers() {
         piFirst = refreshIntBuffer(piFirst, BufferUtils.createByteBuffer(indexSize * verticesPerPolygon).asIntBuffer());
         piCount = refreshIntBuffer(piCount, BufferUtils.createByteBuffer(indexSize * verticesPerPolygon).asIntBuffer());
+        if (indexed || Neodymium.renderer.isMultiDrawIndirectEnabled())
+            piCommands = BufferUtils.createIntBuffer(piFirst.capacity() * INDIRECT_COMMAND_SIZE);
     }
 
     private void moveMeshInVBO(Mesh mesh, long newOffset) {
         moveBytesInVBO(mesh.offset, newOffset, mesh.bufferSize());
         mesh.iFirst = (int) (newOffset / Neodymium.renderer.getStride());
         mesh.offset = newOffset;
+        if (mesh.containingRegion != null) {
+            mesh.containingRegion.getRenderData(this).markDrawListDirty();
+        }
     }
 
     private void copyBytesToVBO(long offset, ByteBuffer bytes) {
         if (bytes.remaining() == 0)
             return;
 
+        val ring = UploadRing.get();
+        if (ring != null && ring.upload(bytes, VBO, offset))
+            return;
+
         glBindBuffer(GL_ARRAY_BUFFER, VBO);
         glBufferSubData(GL_ARRAY_BUFFER, offset, bytes);
         glBindBuffer(GL_ARRAY_BUFFER, GL_ZERO);
@@ -290,14 +675,6 @@ public class GPUMemoryManager {
         glBindBuffer(GL_ARRAY_BUFFER, GL_ZERO);
     }
 
-    private void deleteBytesFromVBO(long offsetBytes, long sizeBytes) {
-        // NO-OP
-    }
-
-    private long end() {
-        return sentMeshes.isEmpty() ? 0 : sentMeshes.get(sentMeshes.size() - 1).getEnd();
-    }
-
     private void destroyImpl() {
         if (VAO != GL_ZERO) {
             glDeleteVertexArrays(VAO);
@@ -307,6 +684,38 @@ public class GPUMemoryManager {
             glDeleteBuffers(VBO);
             VBO = GL_ZERO;
         }
+        if (indirectBuffer != GL_ZERO) {
+            glDeleteBuffers(indirectBuffer);
+            indirectBuffer = GL_ZERO;
+        }
+        if (regionOffsetBuffer != GL_ZERO) {
+            glDeleteBuffers(regionOffsetBuffer);
+            regionOffsetBuffer = GL_ZERO;
+        }
+    }
+
+    /**
+     * Picks the size of a new buffer: the configured one, or if that's 0, enough for the render distance or for what
+     * the previous buffer of the pass ended up using, whichever is bigger.
+     */
+    private static long initialBufferSize(int pass, int verticesPerPolygon, long maxSizeBytes) {
+        long size;
+        if (Config.initialBufferSize > 0) {
+            size = Config.initialBufferSize * MEGABYTE;
+        } else {
+            val renderDistance = Minecraft.getMinecraft().gameSettings.renderDistanceChunks;
+            val columns = (long) (renderDistance * 2 + 1) * (renderDistance * 2 + 1);
+            val bytesPerQuad = (long) (verticesPerPolygon == 3 ? 6 : verticesPerPolygon) * Neodymium.renderer.getStride();
+            val estimate = columns * ESTIMATED_QUADS_PER_COLUMN[pass] * bytesPerQuad;
+            size = Math.max(estimate, recentPeakBytes[pass] + recentPeakBytes[pass] / 4);
+        }
+        return Math.min(Math.max(next16Megabyte(size - 1), MIN_BUFFER_SIZE_BYTES), maxSizeBytes);
+    }
+
+    /** @return The size of the hot arena of a buffer of the given size, rounded down to a whole number of vertices. */
+    private static long hotArenaSize(long bufferSizeBytes) {
+        val stride = Neodymium.renderer.getStride();
+        return bufferSizeBytes * Config.hotArenaPercent / 100 / stride * stride;
     }
 
     private static int createVBO(long sizeBytes) throws Exception {
@@ -372,9 +781,81 @@ public class GPUMemoryManager {
         copyBufferSize = 0;
     }
 
+    /**
+     * Makes sure the shared quad index buffer has indices for at least the given number of quads, and returns it. The
+     * indices of each quad only refer to its own 4 vertices, so a draw of any range of quads can start at index 0 and
+     * select its vertices with the base vertex.
+     */
+    static int prepareQuadIndexBuffer(int quads) {
+        if (quadIndexBuffer != GL_ZERO && quadIndexBufferQuads >= quads)
+            return quadIndexBuffer;
+
+        if (quadIndexBuffer == GL_ZERO)
+            quadIndexBuffer = glGenBuffers();
+        quadIndexBufferQuads = Math.max(MIN_QUAD_INDEX_COUNT, Integer.highestOneBit(Math.max(quads - 1, 1)) << 1);
+
+        val indices = BufferUtils.createIntBuffer(quadIndexBufferQuads * 6);
+        for (int quad = 0; quad < quadIndexBufferQuads; quad++) {
+            val vertex = quad * 4;
+            // Same triangles as MeshPolygon.processPolygon splits the quad into
+            indices.put(vertex).put(vertex + 1).put(vertex + 2);
+            indices.put(vertex + 3).put(vertex).put(vertex + 2);
+        }
+        indices.flip();
+
+        // The element array binding is part of the VAO state, so use a target that doesn't touch it
+        glBindBuffer(GL_COPY_WRITE_BUFFER, quadIndexBuffer);
+        glBufferData(GL_COPY_WRITE_BUFFER, indices, GL_STATIC_DRAW);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, GL_ZERO);
+        return quadIndexBuffer;
+    }
+
+    private static void destroyQuadIndexBuffer() {
+        if (quadIndexBuffer == GL_ZERO)
+            return;
+
+        glDeleteBuffers(quadIndexBuffer);
+        quadIndexBuffer = GL_ZERO;
+        quadIndexBufferQuads = 0;
+    }
+
     private static long next16Megabyte(long size) {
         val sixteenMegs = 16 * MEGABYTE;
         val increments = size / sixteenMegs + 1;
         return increments * sixteenMegs;
     }
+
+    /** A range of the buffer with an allocator of its own. */
+    private class Arena {
+        private final FreeListAllocator allocator;
+        /** The offset the next compaction continues downwards from. */
+        private long compactionCursor = Long.MAX_VALUE;
+        /** Whether to compact the arena down to the bottom even if it's not fragmented enough. */
+        private boolean compactionRequested = false;
+        /** The number of bytes moved around within the arena by compaction. */
+        private long bytesMoved = 0;
+
+        private Arena(FreeListAllocator allocator) {
+            this.allocator = allocator;
+        }
+
+        /** @return The meshes in the arena, by offset. */
+        private NavigableMap<Long, Mesh> meshes() {
+            return sentMeshes.subMap(allocator.getStart(), true, allocator.getEnd(), false);
+        }
+    }
+
+    private static class Reservation {
+        private final long offset;
+        private final long size;
+        private final int generation;
+        private final long time;
+
+        private Reservation(long offset, long size, int generation, long time) {
+            this.offset = offset;
+            this.size = size;
+            this.generation = generation;
+            this.time = time;
+        }
+    }
 }
@@ -0,0 +1,201 @@
+package makamys.neodymium.renderer;
+
+import static makamys.neodymium.renderer.compat.RenderUtil.POLYGON_OFFSET_XPOS;
+import static makamys.neodymium.renderer.compat.RenderUtil.POLYGON_OFFSET_YPOS;
+import static makamys.neodymium.renderer.compat.RenderUtil.POLYGON_OFFSET_ZPOS;
+
+import java.util.Arrays;
+
+import lombok.experimental.UtilityClass;
+import lombok.val;
+import makamys.neodymium.Neodymium;
+
+/**
+ * Removes pairs of quads that two neighbouring blocks put back to back on the boundary between them, such as the faces
+ * two mod blocks draw towards each other. These are hidden when the blocks are solid, so only pairs of blocks that are
+ * both opaque cubes get culled. Faces towards blocks that aren't, such as fancy leaves or glass, can be seen through
+ * them. Mod blocks don't always tell the truth about that, which is why this is optional.
+ * <p>
+ * Quads inside a single block are never removed, even if they lie back to back. Crops, rails, lily pads and such use
+ * these to draw planes that are visible from both sides.
+ */
+@UtilityClass
+public final class HiddenFaceCuller {
+    private static final int INDEX_BITS = 24;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+    private static final PolygonNormal[] NORMALS = PolygonNormal.values();
+
+    private static class Scratch {
+        long[] keys = new long[0];
+        boolean[] removed = new boolean[0];
+
+        void ensureCapacity(int quads) {
+            if (keys.length < quads) {
+                keys = new long[quads];
+                removed = new boolean[quads];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /** @return How a block is told apart from the others in {@link ChunkMesh.PolygonMeshBuffer#quadBlocks}. */
+    public static int blockKey(int index, boolean opaqueCube) {
+        return index << 1 | (opaqueCube ? 1 : 0);
+    }
+
+    private static boolean isOpaqueCube(int blockKey) {
+        return blockKey != -1 && (blockKey & 1) != 0;
+    }
+
+    /**
+     * @param polygonsPerQuad 1 if the quads are stored as is, 2 if they have been split into triangles.
+     * @return The number of polygons removed from the buffer.
+     */
+    public static int cull(ChunkMesh.PolygonMeshBuffer buf, int polygonSize, int polygonsPerQuad) {
+        val quads = buf.quadStarts.size();
+        if (quads < 2 || quads > INDEX_MASK)
+            return 0;
+
+        val scratch = SCRATCH.get();
+        scratch.ensureCapacity(quads);
+        val keys = scratch.keys;
+        val removed = scratch.removed;
+        val data = buf.data;
+        val vertexSize = Neodymium.util.vertexSizeInPolygonBuffer();
+
+        int keyCount = 0;
+        for (int quad = 0; quad < quads; quad++) {
+            int start = buf.quadStarts.get(quad);
+            PolygonNormal normal = NORMALS[data[start + polygonSize - 1]];
+            // Only quads of opaque cubes become candidates, so a pair is only culled if both of its blocks are opaque
+            if (!normal.isAxisAligned() || !isOpaqueCube(buf.quadBlocks.get(quad))
+                || !isOnBlockBoundary(data, start, normal, vertexSize, polygonSize, polygonsPerQuad))
+                continue;
+
+            // Summing makes the hash independent of the order of the corners, which is reversed on the opposite face
+            long hash = Math.abs(normal.signX) + Math.abs(normal.signY) * 2L + Math.abs(normal.signZ) * 3L;
+            for (int corner = 0; corner < 4; corner++) {
+                hash += hashVertex(data, cornerOffset(start, corner, vertexSize, polygonSize, polygonsPerQuad));
+            }
+            keys[keyCount++] = (mix(hash) & ~INDEX_MASK) | quad;
+        }
+        Arrays.sort(keys, 0, keyCount);
+        Arrays.fill(removed, 0, quads, false);
+
+        int removedQuads = 0;
+        for (int i = 0; i < keyCount; ) {
+            int j = i + 1;
+            while (j < keyCount && (keys[j] & ~INDEX_MASK) == (keys[i] & ~INDEX_MASK)) {
+                j++;
+            }
+            // Runs with more than one quad are rare, so checking all pairs in them is cheap
+            for (int a = i; a < j; a++) {
+                int quadA = (int) (keys[a] & INDEX_MASK);
+                if (removed[quadA]) continue;
+
+                for (int b = a + 1; b < j; b++) {
+                    int quadB = (int) (keys[b] & INDEX_MASK);
+                    if (!removed[quadB] && isHiddenPair(buf, quadA, quadB, vertexSize, polygonSize, polygonsPerQuad)) {
+                        removed[quadA] = true;
+                        removed[quadB] = true;
+                        removedQuads += 2;
+                        break;
+                    }
+                }
+            }
+            i = j;
+        }
+
+        if (removedQuads == 0)
+            return 0;
+
+        val quadSize = polygonSize * polygonsPerQuad;
+        int read = 0;
+        int write = 0;
+        for (int quad = 0; quad < quads; quad++) {
+            if (!removed[quad]) continue;
+
+            int start = buf.quadStarts.get(quad);
+            System.arraycopy(data, read, data, write, start - read);
+            write += start - read;
+            read = start + quadSize;
+        }
+        System.arraycopy(data, read, data, write, buf.size - read);
+        buf.size = write + buf.size - read;
+        buf.quadStarts.resetQuick();
+        buf.quadBlocks.resetQuick();
+
+        return removedQuads * polygonsPerQuad;
+    }
+
+    private static boolean isHiddenPair(ChunkMesh.PolygonMeshBuffer buf, int quadA, int quadB, int vertexSize, int polygonSize, int polygonsPerQuad) {
+        if (buf.quadBlocks.get(quadA) == buf.quadBlocks.get(quadB))
+            return false;
+
+        val data = buf.data;
+        val startA = buf.quadStarts.get(quadA);
+        val startB = buf.quadStarts.get(quadB);
+        val normalA = NORMALS[data[startA + polygonSize - 1]];
+        val normalB = NORMALS[data[startB + polygonSize - 1]];
+        if (normalA.signX != -normalB.signX || normalA.signY != -normalB.signY || normalA.signZ != -normalB.signZ)
+            return false;
+
+        return containsCorners(data, startA, startB, vertexSize, polygonSize, polygonsPerQuad)
+               && containsCorners(data, startB, startA, vertexSize, polygonSize, polygonsPerQuad);
+    }
+
+    /** @return Whether the quad lies flat on a plane between two blocks, going by its normal. */
+    private static boolean isOnBlockBoundary(int[] data, int start, PolygonNormal normal, int vertexSize, int polygonSize, int polygonsPerQuad) {
+        val axis = normal.signX != 0 ? POLYGON_OFFSET_XPOS : normal.signY != 0 ? POLYGON_OFFSET_YPOS : POLYGON_OFFSET_ZPOS;
+        // Positions are relative to the region, which starts on a block boundary
+        val coord = data[start + axis];
+        val value = Float.intBitsToFloat(coord);
+        if (value != Math.floor(value))
+            return false;
+
+        for (int corner = 1; corner < 4; corner++) {
+            if (data[cornerOffset(start, corner, vertexSize, polygonSize, polygonsPerQuad) + axis] != coord)
+                return false;
+        }
+        return true;
+    }
+
+    /** @return Whether every corner of the first quad is also a corner of the second one. */
+    private static boolean containsCorners(int[] data, int startA, int startB, int vertexSize, int polygonSize, int polygonsPerQuad) {
+        for (int cornerA = 0; cornerA < 4; cornerA++) {
+            int offsetA = cornerOffset(startA, cornerA, vertexSize, polygonSize, polygonsPerQuad);
+            boolean found = false;
+            for (int cornerB = 0; cornerB < 4 && !found; cornerB++) {
+                int offsetB = cornerOffset(startB, cornerB, vertexSize, polygonSize, polygonsPerQuad);
+                found = data[offsetA + POLYGON_OFFSET_XPOS] == data[offsetB + POLYGON_OFFSET_XPOS]
+                        && data[offsetA + POLYGON_OFFSET_YPOS] == data[offsetB + POLYGON_OFFSET_YPOS]
+                        && data[offsetA + POLYGON_OFFSET_ZPOS] == data[offsetB + POLYGON_OFFSET_ZPOS];
+            }
+            if (!found)
+                return false;
+        }
+        return true;
+    }
+
+    private static int cornerOffset(int start, int corner, int vertexSize, int polygonSize, int polygonsPerQuad) {
+        if (polygonsPerQuad == 2 && corner == 3) {
+            // The 4th corner is the first vertex of the second triangle, see MeshPolygon.processPolygon
+            return start + polygonSize;
+        }
+        return start + corner * vertexSize;
+    }
+
+    private static long hashVertex(int[] data, int offset) {
+        return mix(data[offset + POLYGON_OFFSET_XPOS] * 0x9E3779B97F4A7C15L
+                   + data[offset + POLYGON_OFFSET_YPOS] * 0xC2B2AE3D27D4EB4FL
+                   + data[offset + POLYGON_OFFSET_ZPOS] * 0x165667B19E3779F9L);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
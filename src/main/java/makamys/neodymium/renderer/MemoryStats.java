@@ -0,0 +1,60 @@
+package makamys.neodymium.renderer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/** A snapshot of the allocator counters of a {@link GPUMemoryManager}. */
+public class MemoryStats {
+    public static final String CSV_HEADER = "time,manager,pass,capacity,maxCapacity,liveBytes,hotCapacity,hotLiveBytes,meshes,holes,"
+            + "largestFreeBlock,fragmentation,bytesMovedByGC,bytesMovedHot,bytesMovedCold,promotions,bytesPromoted,uploadBytesLastFrame,uploadBytesTotal,failedPlacements,replacementHits,replacementMisses,managers";
+
+    public int managerIndex;
+    public int pass;
+    public long capacity;
+    public long maxCapacity;
+    public long liveBytes;
+    public long hotCapacity;
+    public long hotLiveBytes;
+    public int meshes;
+    public int holes;
+    public long largestFreeBlock;
+    public double fragmentation;
+    public long bytesMovedByGC;
+    public long bytesMovedHot;
+    public long bytesMovedCold;
+    public int promotions;
+    public long bytesPromoted;
+    public long uploadBytesLastFrame;
+    public long uploadBytesTotal;
+    public int failedPlacements;
+    public int replacementHits;
+    public int replacementMisses;
+    /** The number of memory managers of the renderer. */
+    public int managers;
+
+    public String toCSVRow(long time) {
+        return time + "," + managerIndex + "," + pass + "," + capacity + "," + maxCapacity + "," + liveBytes + "," + hotCapacity + "," + hotLiveBytes
+                + "," + meshes + "," + holes + "," + largestFreeBlock + "," + String.format(Locale.ROOT, "%.4f", fragmentation) + "," + bytesMovedByGC
+                + "," + bytesMovedHot + "," + bytesMovedCold + "," + promotions + "," + bytesPromoted + "," + uploadBytesLastFrame + "," + uploadBytesTotal + "," + failedPlacements + "," + replacementHits + "," + replacementMisses + "," + managers;
+    }
+
+    public List<String> toText() {
+        return Arrays.asList(
+                "Manager " + managerIndex + " (pass " + pass + "): " + toMegabytes(liveBytes) + " live in " + meshes + " meshes, "
+                        + toMegabytes(capacity) + " / " + toMegabytes(maxCapacity) + " allocated",
+                "  " + holes + " holes, largest free block " + toMegabytes(largestFreeBlock) + ", "
+                        + String.format("%.1f", fragmentation * 100) + "% fragmented",
+                "  GC moved " + toMegabytes(bytesMovedByGC) + ", uploaded " + toMegabytes(uploadBytesTotal) + " ("
+                        + uploadBytesLastFrame / 1024 + "KB last frame), " + failedPlacements + " failed placements",
+                "  Hot arena: " + toMegabytes(hotLiveBytes) + " / " + toMegabytes(hotCapacity) + ", " + promotions + " meshes ("
+                        + toMegabytes(bytesPromoted) + ") promoted to cold",
+                "  GC moved " + toMegabytes(bytesMovedHot) + " within hot, " + toMegabytes(bytesMovedCold) + " within cold",
+                "  Replaced in place: " + replacementHits + " hits, " + replacementMisses + " misses"
+        );
+    }
+
+    private static String toMegabytes(long bytes) {
+        return String.format("%.1fMB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -4,6 +4,7 @@ import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
 import makamys.neodymium.util.Util;
+import org.lwjgl.opengl.GL11;
 
 /** A generic mesh that can be sent to the GPU for rendering. */
 public abstract class Mesh {
@@ -21,6 +22,12 @@ public abstract class Mesh {
 	public PolygonNormal normal = PolygonNormal.NONE;
     public NeoRegion containingRegion;
 	public int verticesPerPolygon = -1;
+	/** The index of the mesh in the render data of its region. */
+	public int regionSlot = -1;
+	/** When the mesh was last uploaded, in {@link System#nanoTime()} time. */
+	long placedTime;
+	/** Whether the mesh was drawn when the draw list of its region was last built. */
+	boolean inDrawList;
 	public int drawMode = -1;
 	
 	public double distSq(double x2, double y2, double z2) {
@@ -31,6 +38,11 @@ public abstract class Mesh {
 	    return buffer == null ? 0 : buffer.limit();
 	}
 	
+	/** @return The number of vertices that get drawn per polygon. Quads are drawn as two indexed triangles. */
+	public int elementsPerPolygon() {
+	    return drawMode == GL11.GL_QUADS ? 6 : verticesPerPolygon;
+	}
+	
 	public long getEnd() {
 	    return offset + bufferSize();
 	}
@@ -38,6 +50,16 @@ public abstract class Mesh {
 	public void prepareBuffer() {}
 	public void destroyBuffer() {}
 	
+	/** Frees the CPU-side copy of the data once it's on the GPU. The size of the data stays available. */
+	public void dropBuffer() {}
+	
+	/** @return Whether the data was dropped by {@link #dropBuffer()}, and has to be rebuilt to be uploaded again. */
+	public boolean isBufferDropped() {
+	    return false;
+	}
+	
+	public void requestRebuild() {}
+	
 	public static enum GPUStatus {
 	    UNSENT, SENT, PENDING_DELETE
 	}
@@ -0,0 +1,93 @@
+package makamys.neodymium.renderer;
+
+import static makamys.neodymium.Constants.LOGGER;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import makamys.neodymium.config.Config;
+
+/**
+ * Finishes chunk meshes on a bounded pool of worker threads, so encoding them doesn't hold up the chunk update thread.
+ * Finished meshes are handed back to the render thread through {@link #drainCompleted(NeoRenderer)}.
+ */
+public class MeshFinalizer {
+    private static final int QUEUE_CAPACITY = 256;
+
+    private static final Queue<Job> completed = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pending = new AtomicInteger();
+
+    private static ThreadPoolExecutor executor;
+
+    /**
+     * Queues the mesh up for finalization with the capture buffers it has been detached from. If the queue is full,
+     * the job runs on the calling thread instead.
+     */
+    static void submit(ChunkMesh mesh, ChunkMesh.PolygonMeshBuffer polygons, ChunkMesh.MeshStagingBuffer staging) {
+        pending.incrementAndGet();
+        getExecutor().execute(new Job(mesh, polygons, staging));
+    }
+
+    /** Hands the finished meshes over to the renderer. Has to be called on the render thread. */
+    public static void drainCompleted(NeoRenderer renderer) {
+        Job job;
+        while((job = completed.poll()) != null) {
+            pending.decrementAndGet();
+            if(job.mesh.completeFinalization(job.result, job.generation)) {
+                renderer.onMeshFinalized(job.mesh);
+            }
+        }
+    }
+
+    public static int getPending() {
+        return pending.get();
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if(executor == null) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            int threads = Config.meshFinalizerThreads;
+            executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                Thread thread = new Thread(r, "Neodymium mesh finalizer #" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return executor;
+    }
+
+    private static class Job implements Runnable {
+        private final ChunkMesh mesh;
+        private final ChunkMesh.PolygonMeshBuffer polygons;
+        private final ChunkMesh.MeshStagingBuffer staging;
+        private final int generation;
+        private ByteBuffer result;
+
+        private Job(ChunkMesh mesh, ChunkMesh.PolygonMeshBuffer polygons, ChunkMesh.MeshStagingBuffer staging) {
+            this.mesh = mesh;
+            this.generation = mesh.getGeneration();
+            this.polygons = polygons;
+            this.staging = staging;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // No point in encoding a mesh that has been replaced or deleted while it was waiting in the queue
+                if(!mesh.isDestroyed()) {
+                    result = mesh.build(polygons, staging);
+                }
+            } catch(Exception e) {
+                LOGGER.error("Failed to finalize chunk mesh", e);
+            } finally {
+                ChunkMesh.recycleCaptureBuffers(polygons, staging);
+                completed.offer(this);
+            }
+        }
+    }
+}
@@ -88,4 +88,74 @@ public final class MeshPolygon {
 
         return false;
     }
+
+    /**
+     * Like {@link #processPolygon}, but keeps quads as 4 vertices instead of splitting them into triangles, for
+     * indexed rendering. Triangles are padded into a degenerate quad by repeating their last vertex.
+     */
+    public static boolean processQuad(int[] tessBuffer, int tessOffset, int[] polygonBuffer, int polygonOffset, float offsetX, float offsetY, float offsetZ, boolean triangle, ChunkMesh.Flags flags) {
+        val util = Neodymium.util;
+        val tessVertexSize = util.vertexSizeInTessellator();
+        val polygonVertexSize = util.vertexSizeInPolygonBuffer();
+        val inputVertices = triangle ? 3 : 4;
+        for (int i = 0; i < inputVertices; i++) {
+            util.polygonize(tessBuffer, tessOffset + i * tessVertexSize, polygonBuffer, polygonOffset + i * polygonVertexSize, offsetX, offsetY, offsetZ, flags);
+        }
+        if (triangle) {
+            System.arraycopy(polygonBuffer, polygonOffset + 2 * polygonVertexSize, polygonBuffer, polygonOffset + 3 * polygonVertexSize, polygonVertexSize);
+        }
+
+        boolean deleted = true;
+        for (int i = 1; i < 4; i++) {
+            int offset = polygonOffset + polygonVertexSize * i;
+            if (polygonBuffer[polygonOffset + POLYGON_OFFSET_XPOS] != polygonBuffer[offset + POLYGON_OFFSET_XPOS] ||
+                polygonBuffer[polygonOffset + POLYGON_OFFSET_YPOS] != polygonBuffer[offset + POLYGON_OFFSET_YPOS] ||
+                polygonBuffer[polygonOffset + POLYGON_OFFSET_ZPOS] != polygonBuffer[offset + POLYGON_OFFSET_ZPOS]) {
+                deleted = false;
+                break;
+            }
+        }
+
+        if (deleted)
+            return true;
+
+        val vectors = VECTORS.get();
+        PolygonNormal normal = triangleNormal(polygonBuffer, polygonOffset, polygonVertexSize, 0, 1, 2, vectors);
+        if (!triangle) {
+            // The quad is drawn as two triangles, which face different ways if it isn't flat. Culling it by the
+            // direction of one of them could hide the other while it's still facing the camera.
+            PolygonNormal other = triangleNormal(polygonBuffer, polygonOffset, polygonVertexSize, 2, 3, 0, vectors);
+            if (normal == PolygonNormal.NONE) {
+                // Two corners of the first triangle coincide, so it has no direction. Use the other one.
+                normal = other;
+            } else if (other != PolygonNormal.NONE && other != normal) {
+                normal = PolygonNormal.NONE;
+            }
+        }
+
+        polygonBuffer[polygonOffset + polygonVertexSize * 4] = normal.ordinal();
+
+        return false;
+    }
+
+    /** @return The direction of the triangle, or {@link PolygonNormal#NONE} if it has no area. */
+    private static PolygonNormal triangleNormal(int[] polygonBuffer, int polygonOffset, int polygonVertexSize, int a, int b, int c, Vectors vectors) {
+        int offsetA = polygonOffset + polygonVertexSize * a;
+        int offsetB = polygonOffset + polygonVertexSize * b;
+        int offsetC = polygonOffset + polygonVertexSize * c;
+        float XA = Float.intBitsToFloat(polygonBuffer[offsetA + POLYGON_OFFSET_XPOS]);
+        float YA = Float.intBitsToFloat(polygonBuffer[offsetA + POLYGON_OFFSET_YPOS]);
+        float ZA = Float.intBitsToFloat(polygonBuffer[offsetA + POLYGON_OFFSET_ZPOS]);
+        float XB = Float.intBitsToFloat(polygonBuffer[offsetB + POLYGON_OFFSET_XPOS]);
+        float YB = Float.intBitsToFloat(polygonBuffer[offsetB + POLYGON_OFFSET_YPOS]);
+        float ZB = Float.intBitsToFloat(polygonBuffer[offsetB + POLYGON_OFFSET_ZPOS]);
+        float XC = Float.intBitsToFloat(polygonBuffer[offsetC + POLYGON_OFFSET_XPOS]);
+        float YC = Float.intBitsToFloat(polygonBuffer[offsetC + POLYGON_OFFSET_YPOS]);
+        float ZC = Float.intBitsToFloat(polygonBuffer[offsetC + POLYGON_OFFSET_ZPOS]);
+
+        vectors.A.set(XB - XA, YB - YA, ZB - ZA);
+        vectors.B.set(XC - XB, YC - YB, ZC - ZB);
+        Vector3f.cross(vectors.A, vectors.B, vectors.C);
+        return PolygonNormal.fromVector(vectors.C);
+    }
 }
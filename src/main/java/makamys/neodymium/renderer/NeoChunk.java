@@ -41,7 +41,7 @@ public class NeoChunk {
 		    
 		    if(newChunkMesh != null || !addOnly) {
     		    if(chunkMeshes[cy * 2 + i] != null) {
-    			    renderer.removeMesh(chunkMeshes[cy * 2 + i]);
+    			    renderer.replaceMesh(chunkMeshes[cy * 2 + i], newChunkMesh);
     			    chunkMeshes[cy * 2 + i].destroy();
                     region.meshes--;
                     dirty = true;
@@ -80,6 +80,7 @@ public class NeoChunk {
             if(lod < 2) {
                 for(int i = 0; i < chunkMeshes.length; i++) {
                     if(chunkMeshes[i] != null) {
+                        renderer.removeMesh(chunkMeshes[i]);
                         chunkMeshes[i].destroy();
                         chunkMeshes[i] = null;
                         region.meshes--;
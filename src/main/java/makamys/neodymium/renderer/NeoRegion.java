@@ -1,5 +1,6 @@
 package makamys.neodymium.renderer;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,7 +25,7 @@ public class NeoRegion {
 	public RenderData getRenderData(GPUMemoryManager manager) {
 		int index = manager.managerIndex;
 		while (renderData.size() <= index) {
-			renderData.add(new RenderData(regionX * SIZE * 16, 0, regionZ * SIZE * 16));
+			renderData.add(new RenderData(getOriginX(), getOriginY(), getOriginZ()));
 		}
 		return renderData.get(index);
 	}
@@ -40,6 +41,19 @@ public class NeoRegion {
 		}
 	}
 	
+	public int getOriginX() {
+	    return regionX * SIZE * 16;
+	}
+	
+	public int getOriginZ() {
+	    return regionZ * SIZE * 16;
+	}
+	
+	/** Regions span the whole height of the world. */
+	public int getOriginY() {
+	    return 0;
+	}
+	
 	public static NeoRegion load(int regionX, int regionZ) {
 	    return new NeoRegion(regionX, regionZ);
 	}
@@ -113,18 +127,127 @@ public class NeoRegion {
     public static class RenderData {
         public final double originX, originY, originZ;
         
-        @Getter
+        /** Removed meshes leave a null behind, so the order of the rest is kept until the list gets compacted. */
 		private final List<Mesh> sentMeshes = new ArrayList<Mesh>();
+        private int removedMeshes;
         public int batchLimit;
         public int batchFirst;
         
+        /** The draw ranges of the region from the last time they were built. */
+        public IntBuffer drawFirst = IntBuffer.allocate(64);
+        public IntBuffer drawCount = IntBuffer.allocate(64);
+        public int drawnMeshes;
+        public int drawnPolygons;
+        private boolean drawListDirty = true;
+        /** Where the eye was and how far fog occlusion reached when the draw list was built. -1 if it was off. */
+        private double fogEyeX, fogEyeZ, fogRadius = -1;
+        /** How far the closest mesh was from the edge of fog occlusion when the draw list was built. */
+        private double fogSlack;
+        
+        public boolean isDrawListDirty() {
+            return drawListDirty;
+        }
+        
+        /** Makes the draw list get rebuilt before it's used next. Needed whenever a mesh is added, removed or moved. */
+        public void markDrawListDirty() {
+            drawListDirty = true;
+        }
+        
+        public void setFogEdge(double eyeX, double eyeZ, double radius, double slack) {
+            fogEyeX = eyeX;
+            fogEyeZ = eyeZ;
+            fogRadius = radius;
+            fogSlack = slack;
+        }
+        
+        /**
+         * @return Whether a mesh may have crossed the edge of fog occlusion since the draw list was built. The edge moves
+         * at most as far as the eye moved plus how much the fog radius changed, so the draw list is still valid as long
+         * as that stays below the distance of the closest mesh to it.
+         */
+        public boolean isFogEdgeCrossed(double eyeX, double eyeZ, double radius) {
+            if ((radius < 0) != (fogRadius < 0)) return true;
+            if (radius < 0) return false;
+            
+            return Math.hypot(eyeX - fogEyeX, eyeZ - fogEyeZ) + Math.abs(radius - fogRadius) >= fogSlack;
+        }
+        
+        public void clearDrawList() {
+            drawFirst.clear();
+            drawCount.clear();
+            drawnMeshes = 0;
+            drawnPolygons = 0;
+            drawListDirty = false;
+        }
+        
+        /** Makes sure there is room for at least {@code n} more ranges in the draw list. */
+        public void reserveDrawRanges(int n) {
+            if(drawFirst.remaining() >= n) return;
+            
+            int capacity = Math.max(drawFirst.capacity() * 2, drawFirst.position() + n);
+            drawFirst = copyInto(drawFirst, IntBuffer.allocate(capacity));
+            drawCount = copyInto(drawCount, IntBuffer.allocate(capacity));
+        }
+        
+        private static IntBuffer copyInto(IntBuffer from, IntBuffer to) {
+            from.flip();
+            return to.put(from);
+        }
+        
+        /** @return The meshes in draw order. */
+        public List<Mesh> getSentMeshes() {
+            compact();
+            return sentMeshes;
+        }
+        
+        public void addMesh(Mesh mesh) {
+            mesh.regionSlot = sentMeshes.size();
+            sentMeshes.add(mesh);
+            drawListDirty = true;
+        }
+        
+        public void removeMesh(Mesh mesh) {
+            int slot = mesh.regionSlot;
+            if(slot < 0 || slot >= sentMeshes.size() || sentMeshes.get(slot) != mesh) return;
+            
+            sentMeshes.set(slot, null);
+            mesh.regionSlot = -1;
+            removedMeshes++;
+            drawListDirty = true;
+        }
+        
         public void sort(double eyePosX, double eyePosY, double eyePosZ, boolean pass0, boolean pass1) {
+            if(!pass0 && !pass1) return;
+            
+            compact();
             if(pass0) {
                 sentMeshes.sort(Comparators.MESH_DISTANCE_COMPARATOR.setOrigin(eyePosX, eyePosY, eyePosZ).setInverted(false));
             }
             if(pass1) {
                 sentMeshes.sort(Comparators.MESH_DISTANCE_COMPARATOR.setOrigin(eyePosX, eyePosY, eyePosZ).setInverted(true));
             }
+            for(int i = 0; i < sentMeshes.size(); i++) {
+                Mesh mesh = sentMeshes.get(i);
+                if(mesh.regionSlot != i) {
+                    mesh.regionSlot = i;
+                    drawListDirty = true;
+                }
+            }
+        }
+        
+        private void compact() {
+            if(removedMeshes == 0) return;
+            
+            int size = 0;
+            for(int i = 0; i < sentMeshes.size(); i++) {
+                Mesh mesh = sentMeshes.get(i);
+                if(mesh != null) {
+                    mesh.regionSlot = size;
+                    sentMeshes.set(size++, mesh);
+                }
+            }
+            sentMeshes.subList(size, sentMeshes.size()).clear();
+            removedMeshes = 0;
         }
 	}
 }
@@ -2,12 +2,14 @@ package makamys.neodymium.renderer;
 
 import com.falsepattern.rple.api.common.ServerColorHelper;
 import com.falsepattern.rple.internal.client.dynlights.ColorDynamicLights;
+import gnu.trove.list.array.TIntArrayList;
 import lombok.val;
 import lombok.var;
 import makamys.neodymium.Compat;
 import makamys.neodymium.Neodymium;
 import makamys.neodymium.config.Config;
 import makamys.neodymium.ducks.NeodymiumWorldRenderer;
+import makamys.neodymium.mixin.MixinActiveRenderInfo;
 import makamys.neodymium.renderer.Mesh.GPUStatus;
 import makamys.neodymium.renderer.attribs.AttributeSet;
 import makamys.neodymium.util.*;
@@ -28,15 +30,26 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static makamys.neodymium.Constants.LOGGER;
 import static makamys.neodymium.Constants.VERSION;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL14.glMultiDrawArrays;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
 import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glMultiDrawArraysIndirect;
+import static org.lwjgl.opengl.GL43.glMultiDrawElementsIndirect;
 
 /**
  * The main renderer class.
@@ -62,9 +75,37 @@ public class NeoRenderer {
 
     private int[] shaderProgramsFog = {0, 0};
     private int[] shaderProgramsNoFog = {0, 0};
+    private ShaderUniforms[] uniformsFog = new ShaderUniforms[2];
+    private ShaderUniforms[] uniformsNoFog = new ShaderUniforms[2];
+    private UniformBuffers uniformBuffers;
+    /** Whether the GL values have been read again since the frame block was last filled in. */
+    private boolean frameUniformsDirty = true;
+    /** Whether the eye has moved since the region offsets were last filled in. */
+    private boolean regionUniformsDirty = true;
     private List<GPUMemoryManager> mems = new ArrayList<>();
     private Map<Integer, List<GPUMemoryManager>> memMap = new HashMap<>();
-    private AttributeSet attributes;
+    private final UploadQueue uploadQueue = new UploadQueue();
+
+    /** Meshes that were evicted from VRAM or didn't fit in it, with the generation they had at the time. */
+    private final List<ChunkMesh> evictedMeshes = new ArrayList<>();
+    private final TIntArrayList evictedMeshGenerations = new TIntArrayList();
+    /**
+     * The meshes in VRAM, the ones to evict first at the head. Only collected once per drain of the upload queue, and
+     * only if an upload goes over the budget.
+     */
+    private final PriorityQueue<Mesh> evictionCandidates = new PriorityQueue<>(Comparators.MESH_EVICTION_COMPARATOR);
+    private boolean evictionCandidatesCollected;
+    /** The amount of VRAM allocated when the GPU last ran out of memory. */
+    private long vramLimitBytes = Long.MAX_VALUE;
+    private int evictions;
+    private long lastEvictionRateUpdate;
+    private int evictionsPerSecond;
+    AttributeSet attributes;
+    /** Whether meshes are drawn with one multi-draw-indirect call per memory manager. Decided once in {@link #init()}. */
+    private boolean multiDrawIndirect;
+    /** The vertex attribute the region offsets of the multi-draw-indirect path are read from. */
+    private int regionOffsetAttrib = -1;
+    private FloatBuffer regionOffsets = BufferUtils.createFloatBuffer(3 * 64);
 
     private Map<ChunkCoordIntPair, NeoRegion> loadedRegionsMap = new HashMap<>();
     private List<NeoRegion> loadedRegionsList = new ArrayList<>();
@@ -86,7 +127,19 @@ public class NeoRenderer {
     int eyePosYTDiv;
     int eyePosZTDiv;
 
+    private static final long MEGABYTE = 1024 * 1024L;
+    /** Extra space freed up by an eviction, so the next few uploads don't need one of their own. */
+    private static final long EVICTION_HEADROOM_BYTES = 8 * MEGABYTE;
+    private static final int EVICTED_MESH_RECHECK_INTERVAL = 20;
+
     private int renderedMeshesRender, renderedPolygonsRender;
+    /** The camera chunk the cached draw lists of the regions were built for. */
+    private int drawListEyeXDiv = Integer.MIN_VALUE, drawListEyeYDiv, drawListEyeZDiv;
+    private int drawListsRebuilt;
+    /** The draw lists to rebuild this frame, and the memory manager of each. */
+    private final List<NeoRegion.RenderData> staleDrawLists = new ArrayList<>();
+    private final List<GPUMemoryManager> staleDrawListManagers = new ArrayList<>();
+    private static ForkJoinPool drawListPool;
     private int renderedMeshesShadow, renderedPolygonsShadow;
     private int frameCount;
 
@@ -103,7 +156,6 @@ public class NeoRenderer {
     Vector4f transformedOrigin = new Vector4f();
 
 
-    private int gcCounter = 0;
     public int preRenderSortedRenderers(int renderPass, double alpha, WorldRenderer[] sortedWorldRenderers) {
         if (!hasInited)
             return 0;
@@ -152,17 +204,28 @@ public class NeoRenderer {
 
         val rve = Minecraft.getMinecraft().renderViewEntity;
 
-        eyePosX = rve.lastTickPosX + (rve.posX - rve.lastTickPosX) * alpha;
-        eyePosY = rve.lastTickPosY + (rve.posY - rve.lastTickPosY) * alpha + rve.getEyeHeight();
-        eyePosZ = rve.lastTickPosZ + (rve.posZ - rve.lastTickPosZ) * alpha;
+        setEyePos(rve.lastTickPosX + (rve.posX - rve.lastTickPosX) * alpha,
+                  rve.lastTickPosY + (rve.posY - rve.lastTickPosY) * alpha + rve.getEyeHeight(),
+                  rve.lastTickPosZ + (rve.posZ - rve.lastTickPosZ) * alpha,
+                  transformedOrigin.x, transformedOrigin.y, transformedOrigin.z);
+    }
+
+    /** Moves the eye. The offset is how far the model-view transform moves it, e.g. behind the player in third person. */
+    void setEyePos(double x, double y, double z, double offsetX, double offsetY, double offsetZ) {
+        eyePosX = x;
+        eyePosY = y;
+        eyePosZ = z;
 
-        eyePosXT = eyePosX + transformedOrigin.x;
-        eyePosYT = eyePosY + transformedOrigin.y;
-        eyePosZT = eyePosZ + transformedOrigin.z;
+        eyePosXT = eyePosX + offsetX;
+        eyePosYT = eyePosY + offsetY;
+        eyePosZT = eyePosZ + offsetZ;
 
         eyePosXTDiv = Math.floorDiv((int) Math.floor(eyePosXT), 16);
         eyePosYTDiv = Math.floorDiv((int) Math.floor(eyePosYT), 16);
         eyePosZTDiv = Math.floorDiv((int) Math.floor(eyePosZT), 16);
+
+        // The offsets are relative to the eye, and stored in the order the regions get sorted in after this
+        regionUniformsDirty = true;
     }
 
     public void onRenderTickEnd() {
@@ -172,11 +235,8 @@ public class NeoRenderer {
                 return;
             }
 
-            if (gcCounter % 4 == 0) {
-                for (val mem : mems)
-                    mem.runGC(false);
-            }
-            gcCounter++;
+            for (val mem : mems)
+                mem.runGC(false);
 
             if (showMemoryDebugger) {
                 int yOff = 20;
@@ -215,11 +275,27 @@ public class NeoRenderer {
         return shadowPass || wr.isVisible;
     }
 
+    /**
+     * Fills piFirst and piCount with the ranges to draw, region by region. Outside the shadow pass, each region keeps
+     * its draw list from the previous frame unless a mesh was added, removed or moved, a mesh became visible or hidden
+     * or entered or left the frustum, a mesh may have crossed the edge of fog occlusion, or the camera entered another
+     * chunk, which changes which faces get culled.
+     */
     private void initIndexBuffers(boolean shadowPass) {
         loadedRegionsList.clear();
         loadedRegionsList.addAll(loadedRegionsMap.values());
         loadedRegionsList.sort(Comparators.REGION_DISTANCE_COMPARATOR.setOrigin(eyePosX, eyePosY, eyePosZ));
 
+        // The cap on meshes per frame makes a region's draw list depend on the regions drawn before it
+        val useCache = !shadowPass && Config.maxMeshesPerFrame == -1;
+        val cameraMoved = eyePosXTDiv != drawListEyeXDiv || eyePosYTDiv != drawListEyeYDiv || eyePosZTDiv != drawListEyeZDiv;
+        if (useCache) {
+            drawListEyeXDiv = eyePosXTDiv;
+            drawListEyeYDiv = eyePosYTDiv;
+            drawListEyeZDiv = eyePosZTDiv;
+            rebuildDrawLists(cameraMoved);
+        }
+
         for (val mem: mems) {
             mem.piFirst.clear();
             mem.piCount.clear();
@@ -227,31 +303,21 @@ public class NeoRenderer {
             for (int regionI = order == 1 ? 0 : loadedRegionsList.size() - 1; regionI >= 0 && regionI < loadedRegionsList.size(); regionI += order) {
                 NeoRegion.RenderData region = loadedRegionsList.get(regionI).getRenderData(mem);
                 region.batchFirst = mem.piFirst.position();
-                for (Mesh mesh : region.getSentMeshes()) {
-                    WorldRenderer wr = ((ChunkMesh) mesh).wr;
-                    if ((shadowPass || wr.isInFrustum) && mesh.visible && isRendererVisible(wr, shadowPass) && shouldRenderMesh(mesh)) {
-                        if (mem.piFirst.position() >= mem.piFirst.limit() - 16) {
-                            mem.growIndexBuffers();
-                        }
-                        int meshes = mesh.writeToIndexBuffer(mem.piFirst, mem.piCount, eyePosXTDiv, eyePosYTDiv, eyePosZTDiv, mem.pass);
-                        if (shadowPass) {
-                            renderedMeshesShadow += meshes;
-                        } else {
-                            renderedMeshesRender += meshes;
-                        }
-                        for (int j = mem.piCount.position() - meshes; j < mem.piCount.position(); j++) {
-                            val count = mem.piCount.get(j) / mem.verticesPerPolygon;
-                            if (shadowPass) {
-                                renderedPolygonsShadow += count;
-                            } else {
-                                renderedPolygonsRender += count;
-                            }
-                        }
-                    }
-                    if(Compat.isSpeedupAnimationsEnabled() && !Compat.keepRenderListLogic()) {
-                        // Hodgepodge hooks this method to decide what animations to play, make sure it runs
-                        wr.getGLCallListForPass(mem.pass);
+                if (useCache) {
+                    while (mem.piFirst.remaining() < region.drawFirst.position()) {
+                        mem.growIndexBuffers();
                     }
+                    region.drawFirst.flip();
+                    region.drawCount.flip();
+                    mem.piFirst.put(region.drawFirst);
+                    mem.piCount.put(region.drawCount);
+                    region.drawFirst.limit(region.drawFirst.capacity());
+                    region.drawCount.limit(region.drawCount.capacity());
+
+                    renderedMeshesRender += region.drawnMeshes;
+                    renderedPolygonsRender += region.drawnPolygons;
+                } else {
+                    writeDrawList(mem, region, shadowPass);
                 }
                 region.batchLimit = mem.piFirst.position();
             }
@@ -260,23 +326,215 @@ public class NeoRenderer {
         }
     }
 
+    /**
+     * Rebuilds the draw lists that are out of date. They only depend on their own region, so with
+     * {@link Config#parallelDrawLists} they get built on a fork-join pool, and are put together in order afterwards.
+     */
+    private void rebuildDrawLists(boolean cameraMoved) {
+        val eyeX = eyePosX / 16.0;
+        val eyeZ = eyePosZ / 16.0;
+        val fogRadius = getFogOcclusionRadius();
+        // Occlusion query results change without telling us, so with them there's nothing to do but look at every mesh
+        val occlusion = isOcclusionEnabled();
+        val animationHooks = Compat.isSpeedupAnimationsEnabled() && !Compat.keepRenderListLogic();
+        for (val mem : mems) {
+            for (val neoRegion : loadedRegionsList) {
+                val region = neoRegion.getRenderData(mem);
+                var stale = cameraMoved || region.isDrawListDirty() || region.isFogEdgeCrossed(eyeX, eyeZ, fogRadius)
+                            || (occlusion && hasDrawListChanged(region));
+                if (!stale && Config.checkDrawListEvents && hasDrawListChanged(region)) {
+                    reportMissedDrawListChange(neoRegion);
+                    stale = true;
+                }
+                if (stale) {
+                    staleDrawLists.add(region);
+                    staleDrawListManagers.add(mem);
+                }
+                if (animationHooks) {
+                    runAnimationHooks(mem, region);
+                }
+            }
+        }
+
+        drawListsRebuilt = staleDrawLists.size();
+        buildDrawLists(staleDrawLists, staleDrawListManagers, Config.parallelDrawLists ? getDrawListPool() : null);
+        staleDrawLists.clear();
+        staleDrawListManagers.clear();
+    }
+
+    /**
+     * Builds the draw list of each region, which belongs to the manager at the same index. Runs on the pool if there is
+     * one and there are enough regions.
+     */
+    void buildDrawLists(List<NeoRegion.RenderData> regions, List<GPUMemoryManager> managers, ForkJoinPool pool) {
+        val n = regions.size();
+        if (pool != null && n > DrawListTask.REGIONS_PER_TASK) {
+            pool.invoke(new DrawListTask(regions, managers, 0, n));
+        } else {
+            for (int i = 0; i < n; i++) {
+                buildDrawList(managers.get(i), regions.get(i));
+            }
+        }
+    }
+
+    private static synchronized ForkJoinPool getDrawListPool() {
+        if (drawListPool == null) {
+            drawListPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        }
+        return drawListPool;
+    }
+
+    /** Builds a range of draw lists, splitting it in half until it's small enough. */
+    private class DrawListTask extends RecursiveAction {
+        /** A region holds thousands of meshes, and even at high render distances only a few regions are loaded. */
+        private static final int REGIONS_PER_TASK = 1;
+
+        private final List<NeoRegion.RenderData> regions;
+        private final List<GPUMemoryManager> managers;
+        private final int from, to;
+
+        private DrawListTask(List<NeoRegion.RenderData> regions, List<GPUMemoryManager> managers, int from, int to) {
+            this.regions = regions;
+            this.managers = managers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= REGIONS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    buildDrawList(managers.get(i), regions.get(i));
+                }
+            } else {
+                val mid = (from + to) >>> 1;
+                invokeAll(new DrawListTask(regions, managers, from, mid), new DrawListTask(regions, managers, mid, to));
+            }
+        }
+    }
+
+    /**
+     * @return Whether any mesh of the region would be drawn differently than its draw list says. Looks at every mesh, so
+     * it's only used with occlusion queries, and to check that the events that mark draw lists dirty don't miss any.
+     */
+    private boolean hasDrawListChanged(NeoRegion.RenderData region) {
+        for (Mesh mesh : region.getSentMeshes()) {
+            if (isMeshDrawn(mesh, false) != mesh.inDrawList) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reportMissedDrawListChange(NeoRegion region) {
+        drawListEventMisses++;
+        if (!loggedDrawListEventMiss) {
+            loggedDrawListEventMiss = true;
+            LOGGER.warn("The draw list of " + region + " changed without being marked dirty. Further misses won't be logged.");
+        }
+    }
+
+    /** Hodgepodge hooks getGLCallListForPass to decide what animations to play, make sure it runs for every mesh. */
+    private static void runAnimationHooks(GPUMemoryManager mem, NeoRegion.RenderData region) {
+        for (Mesh mesh : region.getSentMeshes()) {
+            ((ChunkMesh) mesh).wr.getGLCallListForPass(mem.pass);
+        }
+    }
+
+    /**
+     * Builds the draw list of the region from scratch. Only touches the region and its meshes, so draw lists of
+     * different regions can be built at the same time.
+     */
+    private void buildDrawList(GPUMemoryManager mem, NeoRegion.RenderData region) {
+        region.clearDrawList();
+        val eyeX = eyePosX / 16.0;
+        val eyeZ = eyePosZ / 16.0;
+        val fogRadius = getFogOcclusionRadius();
+        var fogSlack = Double.POSITIVE_INFINITY;
+        for (Mesh mesh : region.getSentMeshes()) {
+            if (fogRadius >= 0) {
+                fogSlack = Math.min(fogSlack, Math.abs(Math.sqrt(mesh.distSq(eyeX, mesh.y + 0.5, eyeZ)) - fogRadius));
+            }
+            mesh.inDrawList = isMeshDrawn(mesh, false);
+            if (mesh.inDrawList) {
+                region.reserveDrawRanges(16);
+                int meshes = mesh.writeToIndexBuffer(region.drawFirst, region.drawCount, eyePosXTDiv, eyePosYTDiv, eyePosZTDiv, mem.pass);
+                region.drawnMeshes += meshes;
+                for (int j = region.drawCount.position() - meshes; j < region.drawCount.position(); j++) {
+                    region.drawnPolygons += region.drawCount.get(j) / mem.elementsPerPolygon;
+                }
+            }
+        }
+        region.setFogEdge(eyeX, eyeZ, fogRadius, fogSlack);
+    }
+
+    /**
+     * Writes the ranges of the region straight into piFirst and piCount, leaving its draw list alone. Used for the
+     * shadow pass, so the draw list stays valid for the regular pass.
+     */
+    private void writeDrawList(GPUMemoryManager mem, NeoRegion.RenderData region, boolean shadowPass) {
+        for (Mesh mesh : region.getSentMeshes()) {
+            WorldRenderer wr = ((ChunkMesh) mesh).wr;
+            if (isMeshDrawn(mesh, shadowPass)) {
+                if (mem.piFirst.position() >= mem.piFirst.limit() - 16) {
+                    mem.growIndexBuffers();
+                }
+                int meshes = mesh.writeToIndexBuffer(mem.piFirst, mem.piCount, eyePosXTDiv, eyePosYTDiv, eyePosZTDiv, mem.pass);
+                if (shadowPass) {
+                    renderedMeshesShadow += meshes;
+                } else {
+                    renderedMeshesRender += meshes;
+                }
+                for (int j = mem.piCount.position() - meshes; j < mem.piCount.position(); j++) {
+                    val count = mem.piCount.get(j) / mem.elementsPerPolygon;
+                    if (shadowPass) {
+                        renderedPolygonsShadow += count;
+                    } else {
+                        renderedPolygonsRender += count;
+                    }
+                }
+            }
+            if(Compat.isSpeedupAnimationsEnabled() && !Compat.keepRenderListLogic()) {
+                // Hodgepodge hooks this method to decide what animations to play, make sure it runs
+                wr.getGLCallListForPass(mem.pass);
+            }
+        }
+    }
+
+    private boolean isMeshDrawn(Mesh mesh, boolean shadowPass) {
+        WorldRenderer wr = ((ChunkMesh) mesh).wr;
+        return (shadowPass || wr.isInFrustum) && mesh.visible && isRendererVisible(wr, shadowPass) && shouldRenderMesh(mesh);
+    }
+
     private boolean shouldRenderMesh(Mesh mesh) {
         if (Compat.isShadersShadowPass())
             return true;
         if ((Config.maxMeshesPerFrame == -1 || renderedMeshesRender < Config.maxMeshesPerFrame)) {
-            if ((!isFogEnabled() && !Config.fogOcclusionWithoutFog)
-                || Config.fogOcclusion == !Config.fogOcclusion
+            val fogRadius = getFogOcclusionRadius();
+            if (fogRadius < 0
                 || mesh.distSq(
                     eyePosX / 16.0,
                     mesh.y + 0.5,
                     eyePosZ / 16.0)
-                   < Math.pow((fogStartEnd.get(1)) / 16.0 + 1.0, 2)) {
+                   < fogRadius * fogRadius) {
                 return true;
             }
         }
         return false;
     }
 
+    /** @return The distance in chunks beyond which meshes are hidden by fog occlusion, or -1 if it's off. */
+    private double getFogOcclusionRadius() {
+        if (!isFogEnabled() && !Config.fogOcclusionWithoutFog)
+            return -1;
+        return fogStartEnd.get(1) / 16.0 + 1.0;
+    }
+
+    private static boolean isOcclusionEnabled() {
+        RenderGlobal rg = Minecraft.getMinecraft().renderGlobal;
+        return rg.occlusionEnabled && Minecraft.getMinecraft().gameSettings.advancedOpengl;
+    }
+
 
 
     private static class DelayedTask implements Comparable<DelayedTask> {
@@ -326,6 +584,15 @@ public class NeoRenderer {
     }
 
     private void mainLoop() {
+        MeshFinalizer.drainCompleted(this);
+        if (frameCounter % EVICTED_MESH_RECHECK_INTERVAL == 0) {
+            requeueEvictedMeshes();
+        }
+        uploadQueue.drain(this, eyePosX, eyePosY, eyePosZ);
+        evictionCandidates.clear();
+        evictionCandidatesCollected = false;
+        UploadRing.endFrame();
+
         if (!tasks.isEmpty()) {
             val task = tasks.first();
             if (task.timestamp - frameCounter < 0) {
@@ -390,6 +657,14 @@ public class NeoRenderer {
     FloatBuffer projInvBuf = BufferUtils.createFloatBuffer(16);
     FloatBuffer fogColorBuf = BufferUtils.createFloatBuffer(16);
     FloatBuffer fogStartEnd = BufferUtils.createFloatBuffer(2);
+    private int fogMode;
+    private float fogDensity;
+    private final FloatBuffer glStateCheckBuf = BufferUtils.createFloatBuffer(16);
+    private final IntBuffer glStateCheckIntBuf = BufferUtils.createIntBuffer(16);
+    private final Set<String> loggedGLStateMismatches = new HashSet<>();
+    private int glStateMismatches;
+    private int drawListEventMisses;
+    private boolean loggedDrawListEventMiss;
     Matrix4f modelViewMatrix = new Matrix4f();
     Matrix4f modelViewMatrixInv = new Matrix4f();
     Matrix4f projMatrix = new Matrix4f();
@@ -404,24 +679,23 @@ public class NeoRenderer {
 
             if (shader == 0) return 0;
             glUseProgram(shader);
-            updateUniforms(alpha, pass);
+            updateUniforms(pass);
         }
 
         if (isWireframeEnabled()) {
             GL11.glPolygonMode(GL11.GL_FRONT_AND_BACK, GL11.GL_LINE);
         }
 
-        int u_renderOffset = -1;
-        if (!Compat.isOptiFineShadersEnabled()) {
-            u_renderOffset = glGetUniformLocation(getShaderProgram(pass), "renderOffset");
-        }
-
         val er = Minecraft.getMinecraft().entityRenderer;
         er.enableLightmap(alpha);
 
         var rendered = 0;
         for (val mem: mems) {
             glBindVertexArray(mem.VAO);
+            if (multiDrawIndirect) {
+                rendered += drawIndirect(mem, pass);
+                continue;
+            }
             int oldLimit = mem.piFirst.limit();
 
             int order = pass == 0 ? 1 : -1;
@@ -441,10 +715,14 @@ public class NeoRenderer {
                     GL11.glPushMatrix();
                     GL11.glTranslatef(offsetX, offsetY, offsetZ);
                 } else {
-                    glUniform3f(u_renderOffset, (float) (region.originX - eyePosX), (float) (region.originY - eyePosY), (float) (region.originZ - eyePosZ));
+                    uniformBuffers.bindRegion(regionI);
                 }
 
-                glMultiDrawArrays(mem.drawMode, mem.piFirst, mem.piCount);
+                if (mem.indexed) {
+                    drawQuads(mem);
+                } else {
+                    glMultiDrawArrays(mem.drawMode, mem.piFirst, mem.piCount);
+                }
 
                 if (Compat.isOptiFineShadersEnabled())
                     GL11.glPopMatrix();
@@ -467,12 +745,99 @@ public class NeoRenderer {
         return rendered;
     }
 
-    private void updateGLValues() {
-        glGetFloat(GL_MODELVIEW_MATRIX, modelView);
+    /**
+     * Draws every range in piFirst and piCount with one indirect draw call. The base instance of each command is the
+     * index of its region, which selects the region's render offset from the instanced region offset attribute.
+     * @return The number of ranges drawn.
+     */
+    private int drawIndirect(GPUMemoryManager mem, int pass) {
+        val first = mem.piFirst;
+        val count = mem.piCount;
+        val commands = mem.piCommands;
+        commands.clear();
+        regionOffsets.clear();
+
+        int draws = 0;
+        int regionIndex = 0;
+        int order = pass == 0 ? 1 : -1;
+        for (int regionI = order == 1 ? 0 : loadedRegionsList.size() - 1; regionI >= 0 && regionI < loadedRegionsList.size(); regionI += order) {
+            NeoRegion.RenderData region = loadedRegionsList.get(regionI).getRenderData(mem);
+            if (region.batchLimit == region.batchFirst)
+                continue;
+
+            if (regionOffsets.remaining() < 3) {
+                val newOffsets = BufferUtils.createFloatBuffer(regionOffsets.capacity() * 2);
+                regionOffsets.flip();
+                newOffsets.put(regionOffsets);
+                regionOffsets = newOffsets;
+            }
+            regionOffsets.put((float) (region.originX - eyePosX)).put((float) (region.originY - eyePosY)).put((float) (region.originZ - eyePosZ));
 
-        glGetFloat(GL_PROJECTION_MATRIX, projBuf);
+            for (int i = region.batchFirst; i < region.batchLimit; i++) {
+                if (mem.indexed) {
+                    // count, instanceCount, firstIndex, baseVertex, baseInstance
+                    commands.put(count.get(i)).put(1).put(0).put(first.get(i)).put(regionIndex);
+                } else {
+                    // count, instanceCount, first, baseInstance
+                    commands.put(count.get(i)).put(1).put(first.get(i)).put(regionIndex);
+                }
+            }
+            draws += region.batchLimit - region.batchFirst;
+            regionIndex++;
+        }
+        if (draws == 0)
+            return 0;
 
-        glGetInteger(GL_VIEWPORT, viewportBuf);
+        regionOffsets.flip();
+        commands.flip();
+
+        glBindBuffer(GL_ARRAY_BUFFER, mem.regionOffsetBuffer);
+        glBufferData(GL_ARRAY_BUFFER, regionOffsets, GL_STREAM_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, mem.indirectBuffer);
+        glBufferData(GL_DRAW_INDIRECT_BUFFER, commands, GL_STREAM_DRAW);
+        if (mem.indexed) {
+            glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT, 0L, draws, 0);
+        } else {
+            glMultiDrawArraysIndirect(mem.drawMode, 0L, draws, 0);
+        }
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+        return draws;
+    }
+
+    /** Draws the ranges in piFirst and piCount as indexed quads. piFirst holds the base vertex of each range. */
+    private static void drawQuads(GPUMemoryManager mem) {
+        val first = mem.piFirst;
+        val count = mem.piCount;
+        if (!first.hasRemaining())
+            return;
+
+        if (Compat.isMultiDrawIndirectSupported()) {
+            val commands = mem.piCommands;
+            commands.clear();
+            for (int i = first.position(); i < first.limit(); i++) {
+                // count, instanceCount, firstIndex, baseVertex, baseInstance
+                commands.put(count.get(i)).put(1).put(0).put(first.get(i)).put(0);
+            }
+            commands.flip();
+            glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT, commands, first.remaining(), 0);
+        } else {
+            for (int i = first.position(); i < first.limit(); i++) {
+                glDrawElementsBaseVertex(GL_TRIANGLES, count.get(i), GL_UNSIGNED_INT, 0L, first.get(i));
+            }
+        }
+    }
+
+    private void updateGLValues() {
+        if (isGLStateTracked()) {
+            loadTrackedGLValues();
+            if (Config.checkGLStateTracking) {
+                checkTrackedGLValues();
+            }
+        } else {
+            readGLValues();
+        }
 
         projMatrix.load(projBuf);
         projBuf.flip();
@@ -484,6 +849,25 @@ public class NeoRenderer {
         modelView.flip();
         modelViewMatrixInv.load(modelViewMatrix).invert();
 
+        // In anaglyph 3D, each eye is drawn with its own matrices within the same frame
+        frameUniformsDirty = true;
+    }
+
+    /**
+     * The shadow pass of OptiFine shaders uses different matrices than the ones Minecraft keeps, so the real state is
+     * read back there.
+     */
+    private boolean isGLStateTracked() {
+        return Config.trackGLState && !Compat.isOptiFineShadersEnabled() && GLStateTracker.hasFog();
+    }
+
+    private void readGLValues() {
+        glGetFloat(GL_MODELVIEW_MATRIX, modelView);
+
+        glGetFloat(GL_PROJECTION_MATRIX, projBuf);
+
+        glGetInteger(GL_VIEWPORT, viewportBuf);
+
         fogColorBuf.limit(16);
         glGetFloat(GL_FOG_COLOR, fogColorBuf);
         fogColorBuf.limit(4);
@@ -493,70 +877,138 @@ public class NeoRenderer {
 
         fogStartEnd.flip();
 
+        fogMode = glGetInteger(GL_FOG_MODE);
+        fogDensity = glGetFloat(GL_FOG_DENSITY);
+
         fogEnabled = GL11.glIsEnabled(GL11.GL_FOG) && !OFUtil.isFogOff();
     }
 
-    private void updateUniforms(double alpha, int pass) {
-        int shaderProgram = getShaderProgram(pass);
-
-        int u_modelView = glGetUniformLocation(shaderProgram, "modelView");
-        int u_proj = glGetUniformLocation(shaderProgram, "proj");
-        int u_playerPos = glGetUniformLocation(shaderProgram, "playerPos");
-        int u_viewport = glGetUniformLocation(shaderProgram, "viewport");
-        int u_projInv = glGetUniformLocation(shaderProgram, "projInv");
-        int u_fogColor = glGetUniformLocation(shaderProgram, "fogColor");
-        int u_fogStartEnd = glGetUniformLocation(shaderProgram, "fogStartEnd");
-        int u_fogMode = glGetUniformLocation(shaderProgram, "fogMode");
-        int u_fogDensity = glGetUniformLocation(shaderProgram, "fogDensity");
-
-        glUniformMatrix4(u_modelView, false, modelView);
-        glUniformMatrix4(u_proj, false, projBuf);
-        glUniformMatrix4(u_projInv, false, projInvBuf);
-        glUniform4f(u_viewport, viewportBuf.get(0), viewportBuf.get(1), viewportBuf.get(2), viewportBuf.get(3));
-        glUniform4(u_fogColor, fogColorBuf);
-        glUniform2(u_fogStartEnd, fogStartEnd);
-        glUniform1i(u_fogMode, glGetInteger(GL_FOG_MODE));
-        glUniform1f(u_fogDensity, glGetFloat(GL_FOG_DENSITY));
-        glUniform3f(u_playerPos, (float) eyePosX, (float) eyePosY, (float) eyePosZ);
+    /** Fills in the same values as {@link #readGLValues()}, but from Minecraft and {@link GLStateTracker}. */
+    private void loadTrackedGLValues() {
+        // Captured by ActiveRenderInfo right after the camera is set up, and the terrain is drawn with the same matrices
+        val modelViewSrc = MixinActiveRenderInfo.getModelview();
+        val projSrc = MixinActiveRenderInfo.getProjection();
+        val viewportSrc = MixinActiveRenderInfo.getViewport();
+        for (int i = 0; i < 16; i++) {
+            modelView.put(i, modelViewSrc.get(i));
+            projBuf.put(i, projSrc.get(i));
+        }
+        for (int i = 0; i < 4; i++) {
+            viewportBuf.put(i, viewportSrc.get(i));
+        }
+
+        fogColorBuf.limit(4);
+        GLStateTracker.getFogColor(fogColorBuf);
+
+        fogStartEnd.put(0, GLStateTracker.getFogStart());
+        fogStartEnd.put(1, GLStateTracker.getFogEnd());
+
+        fogMode = GLStateTracker.getFogMode();
+        fogDensity = GLStateTracker.getFogDensity();
+
+        // The fog is always enabled for the terrain, unless OptiFine turns it off
+        fogEnabled = !OFUtil.isFogOff();
+    }
+
+    private void checkTrackedGLValues() {
+        checkGLValue("modelview matrix", GL_MODELVIEW_MATRIX, modelView, 16);
+        checkGLValue("projection matrix", GL_PROJECTION_MATRIX, projBuf, 16);
+        checkGLValue("fog color", GL_FOG_COLOR, fogColorBuf, 4);
+        checkGLValue("fog start", glGetFloat(GL_FOG_START), fogStartEnd.get(0));
+        checkGLValue("fog end", glGetFloat(GL_FOG_END), fogStartEnd.get(1));
+        checkGLValue("fog density", glGetFloat(GL_FOG_DENSITY), fogDensity);
+        checkGLValue("fog mode", glGetInteger(GL_FOG_MODE), fogMode);
+        checkGLValue("fog enabled", GL11.glIsEnabled(GL11.GL_FOG) && !OFUtil.isFogOff() ? 1 : 0, fogEnabled ? 1 : 0);
+
+        glStateCheckIntBuf.clear();
+        glGetInteger(GL_VIEWPORT, glStateCheckIntBuf);
+        for (int i = 0; i < 4; i++) {
+            if (glStateCheckIntBuf.get(i) != viewportBuf.get(i)) {
+                reportGLStateMismatch("viewport", viewportBuf.get(i), glStateCheckIntBuf.get(i));
+                break;
+            }
+        }
+    }
+
+    private void checkGLValue(String name, int pname, FloatBuffer tracked, int n) {
+        glStateCheckBuf.clear();
+        glGetFloat(pname, glStateCheckBuf);
+        for (int i = 0; i < n; i++) {
+            if (!checkGLValue(name, glStateCheckBuf.get(i), tracked.get(i)))
+                return;
+        }
+    }
+
+    /** @return Whether the values match. */
+    private boolean checkGLValue(String name, float real, float tracked) {
+        if (Math.abs(real - tracked) <= 1e-4f * Math.max(1f, Math.abs(real)))
+            return true;
+
+        reportGLStateMismatch(name, tracked, real);
+        return false;
+    }
+
+    private void reportGLStateMismatch(String name, float tracked, float real) {
+        glStateMismatches++;
+        if (loggedGLStateMismatches.add(name)) {
+            LOGGER.warn("Tracked " + name + " doesn't match the OpenGL state (tracked: " + tracked + ", real: " + real + "). Further mismatches of it won't be logged.");
+        }
+    }
+
+    /**
+     * Fills in the parts of the uniform buffers whose values have changed since they were last filled in, and sets the
+     * few uniforms that are per program. The region offsets only change with the eye position, so the translucent
+     * pass reuses the ones of the opaque pass.
+     */
+    private void updateUniforms(int pass) {
+        if (frameUniformsDirty) {
+            frameUniformsDirty = false;
+            uniformBuffers.uploadFrame(modelView, projBuf, projInvBuf, viewportBuf, fogColorBuf, fogStartEnd, fogMode, fogDensity);
+        }
+        if (regionUniformsDirty && !multiDrawIndirect) {
+            regionUniformsDirty = false;
+            val regions = loadedRegionsList.size();
+            uniformBuffers.beginRegions(regions);
+            for (int i = 0; i < regions; i++) {
+                val region = loadedRegionsList.get(i);
+                uniformBuffers.putRegion(i, (float) (region.getOriginX() - eyePosX), (float) (region.getOriginY() - eyePosY), (float) (region.getOriginZ() - eyePosZ));
+            }
+            uniformBuffers.endRegions(regions);
+        }
+        uniformBuffers.bindFrame();
 
         if (Compat.ft$isDynamicLights()) {
-            int u_playerHandLight = glGetUniformLocation(shaderProgram, "playerHandLight");
+            val uniforms = getUniforms(pass);
             if (Compat.isRPLEModPresent()) {
                 short light = Compat.RPLECompat.getLightLevel(Minecraft.getMinecraft().renderViewEntity);
                 float r = ServerColorHelper.red(light) / 16.0f;
                 float g = ServerColorHelper.green(light) / 16.0f;
                 float b = ServerColorHelper.blue(light) / 16.0f;
-                glUniform3f(u_playerHandLight, r, g, b);
+                glUniform3f(uniforms.playerHandLight, r, g, b);
             } else {
                 int playerLight = Compat.FalseTweaksCompat.getLightLevel(Minecraft.getMinecraft().renderViewEntity);
-                glUniform1f(u_playerHandLight, playerLight / 16.0f);
+                glUniform1f(uniforms.playerHandLight, playerLight / 16.0f);
             }
         }
+    }
 
+    /** Points the samplers of a newly linked program at their texture units, which never change. */
+    private static void initSamplers(int program) {
+        glUseProgram(program);
         if (Compat.isRPLEModPresent()) {
             //TODO connect to RPLE gl api (once that exists)
             // For now we just use the RPLE default texture indices
-            int u_light_r = glGetUniformLocation(shaderProgram, "lightTexR");
-            int u_light_g = glGetUniformLocation(shaderProgram, "lightTexG");
-            int u_light_b = glGetUniformLocation(shaderProgram, "lightTexB");
-            glUniform1i(u_light_r, 1);
-            glUniform1i(u_light_g, 2);
-            glUniform1i(u_light_b, 3);
+            glUniform1i(glGetUniformLocation(program, "lightTexR"), 1);
+            glUniform1i(glGetUniformLocation(program, "lightTexG"), 2);
+            glUniform1i(glGetUniformLocation(program, "lightTexB"), 3);
         } else {
-            int u_light = glGetUniformLocation(shaderProgram, "lightTex");
-            glUniform1i(u_light, 1);
+            glUniform1i(glGetUniformLocation(program, "lightTex"), 1);
         }
-
-        modelView.position(0);
-        projBuf.position(0);
-        viewportBuf.position(0);
-        projInvBuf.position(0);
-        fogColorBuf.position(0);
-        fogStartEnd.position(0);
+        glUseProgram(0);
     }
 
     /**
-     * @implSpec The attributes here need to be kept in sync with {@link makamys.neodymium.renderer.compat.RenderUtil#writeMeshPolygonToBuffer(int[], int, BufferWriter, int, int)}
+     * @implSpec The attributes here need to be kept in sync with {@link makamys.neodymium.renderer.compat.RenderUtil#writeMeshPolygonToBuffer(int[], int, BulkBufferWriter, int, int)}
      */
     public boolean init() {
         Compat.updateOptiFineShadersState();
@@ -565,6 +1017,13 @@ public class NeoRenderer {
 
         Neodymium.util.initVertexAttributes(attributes);
 
+        // The region offsets are fed in through an instanced vertex attribute, which the OptiFine shaders don't know
+        // about. It is indexed by the baseInstance of each draw command, which needs base instance support.
+        multiDrawIndirect = Config.multiDrawIndirect && Compat.isMultiDrawIndirectSupported() && Compat.isBaseInstanceSupported()
+                            && !Compat.isOptiFineShadersEnabled();
+        regionOffsetAttrib = attributes.size();
+
+        uniformBuffers = new UniformBuffers();
         reloadShader();
         return true;
     }
@@ -574,15 +1033,36 @@ public class NeoRenderer {
         mems.add(mem);
         memMap.computeIfAbsent(pass, p -> new ArrayList<>()).add(mem);
 
+        setupVertexArray(mem);
+        return mem;
+    }
+
+    /** Points the vertex attributes of the manager's VAO at its current VBO. */
+    void setupVertexArray(GPUMemoryManager mem) {
         glBindVertexArray(mem.VAO);
 
         glBindBuffer(GL_ARRAY_BUFFER, mem.VBO);
 
         Neodymium.util.applyVertexAttributes(attributes);
 
+        if (mem.indexed) {
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, GPUMemoryManager.prepareQuadIndexBuffer(0));
+        }
+
+        if (multiDrawIndirect) {
+            // One value per instance, so the base instance of a draw command picks the offset of its region
+            glBindBuffer(GL_ARRAY_BUFFER, mem.regionOffsetBuffer);
+            glVertexAttribPointer(regionOffsetAttrib, 3, GL_FLOAT, false, 12, 0);
+            glVertexAttribDivisor(regionOffsetAttrib, 1);
+            glEnableVertexAttribArray(regionOffsetAttrib);
+        }
+
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         glBindVertexArray(0);
-        return mem;
+    }
+
+    public boolean isMultiDrawIndirectEnabled() {
+        return multiDrawIndirect;
     }
 
     public int getStride() {
@@ -604,6 +1084,10 @@ public class NeoRenderer {
             if (pass == 0) {
                 defines.put("PASS_0", "");
             }
+            if (multiDrawIndirect) {
+                defines.put("MULTI_DRAW_INDIRECT", "");
+                defines.put("ATTRIB_REGION_OFFSET", Integer.toString(regionOffsetAttrib));
+            }
             if (Compat.ft$isDynamicLights()) {
                 defines.put("DYN_LIGHTS", "");
                 if (Compat.ft$isDynamicLightsCircular()) {
@@ -617,6 +1101,7 @@ public class NeoRenderer {
             }
 
             attributeSet.addDefines(defines);
+            Neodymium.util.addShaderDefines(defines);
 
             boolean errors = false;
 
@@ -654,6 +1139,9 @@ public class NeoRenderer {
 
             if (!errors) {
                 ((hasFog == 1) ? shaderProgramsFog : shaderProgramsNoFog)[pass] = newShaderProgram;
+                ((hasFog == 1) ? uniformsFog : uniformsNoFog)[pass] = new ShaderUniforms(newShaderProgram);
+                UniformBuffers.bindBlocks(newShaderProgram);
+                initSamplers(newShaderProgram);
             }
 
             glDeleteShader(vertexShader);
@@ -673,6 +1161,7 @@ public class NeoRenderer {
         glDeleteProgram(shaderProgramsFog[1]);
         glDeleteProgram(shaderProgramsNoFog[0]);
         glDeleteProgram(shaderProgramsNoFog[1]);
+        uniformBuffers.destroy();
         for (val mem: mems) {
             mem.destroy();
         }
@@ -700,6 +1189,20 @@ public class NeoRenderer {
         neoChunkChanged(neoChunk);
     }
 
+    /** Called when a WorldRenderer enters or leaves the view frustum, which decides whether its meshes get drawn. */
+    public void onWorldRendererFrustumChanged(WorldRenderer wr) {
+        int x = Math.floorDiv(wr.posX, 16);
+        int y = Math.floorDiv(wr.posY, 16);
+        int z = Math.floorDiv(wr.posZ, 16);
+        // Don't load a region just for this, renderers far outside the render distance get frustum checked too
+        NeoRegion region = loadedRegionsMap.get(new ChunkCoordIntPair(Math.floorDiv(x, NeoRegion.SIZE), Math.floorDiv(z, NeoRegion.SIZE)));
+        if (region == null || y < 0 || y >= 16) return;
+
+        NeoChunk neoChunk = region.getChunkAbsolute(x, z);
+        markDrawListDirty(neoChunk.chunkMeshes[y * 2]);
+        markDrawListDirty(neoChunk.chunkMeshes[y * 2 + 1]);
+    }
+
     public void onWorldRendererPost(WorldRenderer wr, boolean sort) {
         int x = Math.floorDiv(wr.posX, 16);
         int y = Math.floorDiv(wr.posY, 16);
@@ -759,48 +1262,234 @@ public class NeoRenderer {
                             setMeshVisible(cm, false);
                         }
                     }
-                    uploadMeshToGPU(cm);
+                    if (cm.gpuStatus == GPUStatus.UNSENT && cm.verticesPerPolygon != -1) {
+                        uploadQueue.add(cm, eyePosX, eyePosY, eyePosZ);
+                    }
                 }
             }
         }
     }
 
 
+    /** Called when the data of a mesh that was finalized asynchronously becomes available. */
+    void onMeshFinalized(ChunkMesh mesh) {
+        val region = loadedRegionsMap.get(new ChunkCoordIntPair(Math.floorDiv(mesh.x, NeoRegion.SIZE), Math.floorDiv(mesh.z, NeoRegion.SIZE)));
+        if (region == null)
+            return;
+
+        val neoChunk = region.getChunkAbsolute(mesh.x, mesh.z);
+        if (neoChunk != null && neoChunk.chunkMeshes[mesh.y * 2 + mesh.pass] == mesh) {
+            // The mesh got handed over by onWorldRendererPost before its data was ready, so it couldn't be uploaded then
+            neoChunkChanged(neoChunk);
+        }
+    }
+
     protected void uploadMeshToGPU(Mesh mesh) {
-        if (mesh.gpuStatus != GPUStatus.UNSENT || mesh.buffer == null || mesh.verticesPerPolygon == -1) {
+        if (mesh.gpuStatus != GPUStatus.UNSENT || mesh.verticesPerPolygon == -1) {
+            return;
+        }
+        if (mesh.buffer == null) {
+            if (mesh.isBufferDropped()) {
+                // The data only lived on the GPU and got lost since, so it has to be built again
+                mesh.requestRebuild();
+            }
+            return;
+        }
+        if (!makeRoomInVRAM(mesh)) {
+            deferUpload(mesh);
             return;
         }
         boolean sent = false;
         GPUMemoryManager mem = null;
         val memArr = memMap.get(mesh.pass);
-        if (memArr != null)
-            for (int i = 0; i < memArr.size(); i++) {
+        if (memArr != null) {
+            // The manager holding the space of the mesh this one replaces goes first, so it can take that place
+            for (int i = 0; i < memArr.size() && !sent; i++) {
+                if (memArr.get(i).hasReservation(mesh)) {
+                    mem = memArr.get(i);
+                    sent = mem.uploadMesh(mesh);
+                }
+            }
+            for (int i = 0; i < memArr.size() && !sent; i++) {
                 mem = memArr.get(i);
                 sent = mem.uploadMesh(mesh);
-                if (sent)
-                    break;
             }
+        }
         if (!sent) {
+            if (getVRAMHeadroom(mesh.pass) < GPUMemoryManager.MIN_BUFFER_SIZE_BYTES) {
+                // There's no room in the budget for another buffer, so close up the holes in the ones there are instead
+                if (memArr != null) {
+                    for (val m : memArr) {
+                        m.requestCompaction();
+                    }
+                }
+                deferUpload(mesh);
+                return;
+            }
             try {
                 mem = initMemoryManager(mesh.pass, mesh.drawMode, mesh.verticesPerPolygon);
             } catch (Exception e) {
-                ChatUtil.showNeoChatMessage("Could not allocate memory buffer: " + e.getMessage(), ChatUtil.MessageVerbosity.ERROR);
-                e.printStackTrace();
-                Neodymium.renderer.destroyPending = true;
+                if (mems.isEmpty()) {
+                    ChatUtil.showNeoChatMessage("Could not allocate memory buffer: " + e.getMessage(), ChatUtil.MessageVerbosity.ERROR);
+                    e.printStackTrace();
+                    Neodymium.renderer.destroyPending = true;
+                    return;
+                }
+                // Make do with the VRAM we already have, and evict far away meshes to make room for close ones
+                if (vramLimitBytes == Long.MAX_VALUE) {
+                    ChatUtil.showNeoChatMessage("Ran out of VRAM, far away chunks will be unloaded to make room for close ones.", ChatUtil.MessageVerbosity.WARNING);
+                    LOGGER.warn("Could not allocate memory buffer, limiting VRAM usage to " + getAllocatedVRAM() / MEGABYTE + "MB", e);
+                }
+                vramLimitBytes = getAllocatedVRAM();
+                deferUpload(mesh);
                 return;
             }
             mem.uploadMesh(mesh);
         }
+        if (Config.gpuResidentMeshes) {
+            mesh.dropBuffer();
+        }
         NeoRegion region = getRegionContaining(mesh.x, mesh.z);
-        region.getRenderData(mem).getSentMeshes().add(mesh);
+        region.getRenderData(mem).addMesh(mesh);
         mesh.containingRegion = region;
     }
 
+    private long getVRAMBudget() {
+        val configured = Config.vramBudget == 0 ? Long.MAX_VALUE : Config.vramBudget * MEGABYTE;
+        return Math.min(configured, vramLimitBytes);
+    }
+
+    private long getUsedVRAM() {
+        long used = 0;
+        for (val mem : mems) {
+            used += mem.getUsedBytes();
+        }
+        return used;
+    }
+
+    /** @return The total size of the buffers, used or not. This is what the budget limits. */
+    private long getAllocatedVRAM() {
+        long allocated = 0;
+        for (val mem : mems) {
+            allocated += mem.getBufferSizeBytes();
+        }
+        return allocated;
+    }
+
+    /**
+     * @return How many more bytes of buffers the given pass may allocate without going over the VRAM budget. Enough
+     * for a first buffer is set aside for each other pass that doesn't have one yet, so one pass can't take all of it.
+     */
+    long getVRAMHeadroom(int pass) {
+        val budget = getVRAMBudget();
+        if (budget == Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+
+        var reserved = 0L;
+        for (int otherPass = 0; otherPass < 2; otherPass++) {
+            if (otherPass != pass && !memMap.containsKey(otherPass)) {
+                reserved += GPUMemoryManager.MIN_BUFFER_SIZE_BYTES;
+            }
+        }
+        return Math.max(0, budget - getAllocatedVRAM() - reserved);
+    }
+
+    /**
+     * Evicts meshes that are farther away than the given one until it fits in the VRAM budget.
+     * @return Whether it fits.
+     */
+    private boolean makeRoomInVRAM(Mesh mesh) {
+        val budget = getVRAMBudget();
+        if (budget == Long.MAX_VALUE)
+            return true;
+
+        val excess = getUsedVRAM() + mesh.bufferSize() - budget;
+        if (excess <= 0)
+            return true;
+
+        val comparator = Comparators.MESH_EVICTION_COMPARATOR;
+        if (!evictionCandidatesCollected) {
+            evictionCandidatesCollected = true;
+            // The eye doesn't move during a drain, so the order stays valid for all the uploads in it
+            comparator.setOrigin(eyePosX, eyePosY, eyePosZ);
+            for (val region : loadedRegionsMap.values()) {
+                for (val mem : mems) {
+                    for (val candidate : region.getRenderData(mem).getSentMeshes()) {
+                        if (candidate instanceof ChunkMesh) {
+                            evictionCandidates.add(candidate);
+                        }
+                    }
+                }
+            }
+        }
+
+        long freed = 0;
+        while (freed < excess + EVICTION_HEADROOM_BYTES && !evictionCandidates.isEmpty()) {
+            val candidate = evictionCandidates.peek();
+            if (comparator.compare(candidate, mesh) >= 0)
+                break;
+            evictionCandidates.poll();
+            // Meshes that were deleted or evicted earlier in the drain are still in the queue
+            if (candidate.gpuStatus != GPUStatus.SENT)
+                continue;
+            freed += candidate.bufferSize();
+            evict((ChunkMesh) candidate);
+        }
+        return freed >= excess;
+    }
+
+    /** Takes the mesh out of VRAM but keeps it around, so it can be uploaded again once there is room for it. */
+    private void evict(ChunkMesh mesh) {
+        val mem = mesh.attachedManager;
+        val visible = mesh.visible;
+        mem.deleteMesh(mesh);
+        mesh.visible = visible;
+        if (mesh.containingRegion != null) {
+            mesh.containingRegion.getRenderData(mem).removeMesh(mesh);
+        }
+        deferUpload(mesh);
+        evictions++;
+    }
+
+    private void deferUpload(Mesh mesh) {
+        if (mesh instanceof ChunkMesh) {
+            val chunkMesh = (ChunkMesh) mesh;
+            evictedMeshes.add(chunkMesh);
+            evictedMeshGenerations.add(chunkMesh.getGeneration());
+        }
+    }
+
+    /** Queues up evicted meshes that are still current for another upload attempt. */
+    private void requeueEvictedMeshes() {
+        for (int i = 0; i < evictedMeshes.size(); i++) {
+            val mesh = evictedMeshes.get(i);
+            if (!mesh.isDestroyed() && mesh.getGeneration() == evictedMeshGenerations.get(i) && mesh.gpuStatus == GPUStatus.UNSENT) {
+                uploadQueue.add(mesh, eyePosX, eyePosY, eyePosZ);
+            }
+        }
+        evictedMeshes.clear();
+        evictedMeshGenerations.resetQuick();
+
+        val t = System.nanoTime();
+        if (t - lastEvictionRateUpdate > 1_000_000_000L) {
+            evictionsPerSecond = lastEvictionRateUpdate == 0 ? 0 : (int) (evictions * 1_000_000_000L / (t - lastEvictionRateUpdate));
+            evictions = 0;
+            lastEvictionRateUpdate = t;
+        }
+    }
+
     protected void setMeshVisible(Mesh mesh, boolean visible) {
         if (mesh == null) return;
 
         if (mesh.visible != visible) {
             mesh.visible = visible;
+            markDrawListDirty(mesh);
+        }
+    }
+
+    private static void markDrawListDirty(Mesh mesh) {
+        if (mesh != null && mesh.attachedManager != null && mesh.containingRegion != null) {
+            mesh.containingRegion.getRenderData(mesh.attachedManager).markDrawListDirty();
         }
     }
 
@@ -811,12 +1500,28 @@ public class NeoRenderer {
         if (mem != null) {
             mesh.attachedManager.deleteMesh(mesh);
             if (mesh.containingRegion != null) {
-                mesh.containingRegion.getRenderData(mem).getSentMeshes().remove(mesh);
+                mesh.containingRegion.getRenderData(mem).removeMesh(mesh);
             }
         }
         setMeshVisible(mesh, false);
     }
 
+    /** Like {@link #removeMesh(Mesh)}, but lets the replacement take the place of the old mesh in VRAM if it fits. */
+    public void replaceMesh(Mesh oldMesh, ChunkMesh newMesh) {
+        if (oldMesh == null) return;
+
+        val mem = oldMesh.attachedManager;
+        if (mem == null || newMesh == null) {
+            removeMesh(oldMesh);
+            return;
+        }
+        if (oldMesh.containingRegion != null) {
+            oldMesh.containingRegion.getRenderData(mem).removeMesh(oldMesh);
+        }
+        mem.deleteMeshForReplacement(oldMesh, newMesh);
+        setMeshVisible(oldMesh, false);
+    }
+
     public List<String> getDebugText(boolean statusCommand) {
         List<String> text = new ArrayList<>();
         text.add(
@@ -825,9 +1530,26 @@ public class NeoRenderer {
                 + "Neodymium " + VERSION
         );
         text.addAll(Arrays.asList(
-                "Meshes: " + ChunkMesh.instances.get() + " (" + ChunkMesh.usedRAM.get() / 1024 / 1024 + "MB)",
-                "Rendered: " + renderedMeshesRender + " (" + renderedPolygonsRender / 1000 + "KQ)"
+                "Meshes: " + ChunkMesh.instances.get() + " (" + ChunkMesh.usedRAM.get() / 1024 / 1024 + "MB)"
                                  ));
+        text.addAll(ChunkMesh.bufferPool.debugText());
+        if (Config.cullHiddenFaces) {
+            text.add("Hidden polygons removed: " + ChunkMesh.totalHiddenPolygonsRemoved.get());
+        }
+        if (Config.asyncMeshFinalization) {
+            text.add("Finalizing: " + MeshFinalizer.getPending());
+        }
+        text.add(uploadQueue.debugText());
+        if (getVRAMBudget() != Long.MAX_VALUE) {
+            text.add("VRAM budget: " + getUsedVRAM() / MEGABYTE + "MB used, " + getAllocatedVRAM() / MEGABYTE + "MB allocated / " + getVRAMBudget() / MEGABYTE + "MB, evicting " + evictionsPerSecond + "/s");
+        }
+        if (Config.checkGLStateTracking) {
+            text.add("GL state mismatches: " + glStateMismatches);
+        }
+        if (Config.checkDrawListEvents) {
+            text.add("Missed draw list changes: " + drawListEventMisses);
+        }
+        text.add("Rendered: " + renderedMeshesRender + " (" + renderedPolygonsRender / 1000 + "KQ), " + drawListsRebuilt + " draw lists rebuilt");
         if (Compat.isOptiFineShadersEnabled()) {
             text.add("Shadow Rendered: " + renderedMeshesShadow + " (" + renderedPolygonsShadow / 1000 + "KQ)");
         }
@@ -848,10 +1570,98 @@ public class NeoRenderer {
         return text;
     }
 
+    /** Takes a snapshot of the allocator counters of each memory manager, for {@code /neodymium memstats}. */
+    public List<MemoryStats> getMemoryStats() {
+        val stats = new ArrayList<MemoryStats>();
+        for (val mem : mems) {
+            val memStats = mem.getStats();
+            memStats.managers = mems.size();
+            stats.add(memStats);
+        }
+        return stats;
+    }
+
+    /** Reports what share of the opaque polygons faces in each direction, in the current chunk and in the whole world. */
+    public List<String> getNormalStatsText() {
+        val normals = PolygonNormal.values();
+        val local = new long[normals.length];
+        val total = new long[normals.length];
+
+        val rve = Minecraft.getMinecraft().renderViewEntity;
+        val chunkX = Math.floorDiv((int) Math.floor(rve.posX), 16);
+        val chunkY = Math.floorDiv((int) Math.floor(rve.posY), 16);
+        val chunkZ = Math.floorDiv((int) Math.floor(rve.posZ), 16);
+        long localHidden = 0;
+        long totalHidden = 0;
+
+        for (val region : loadedRegionsMap.values()) {
+            for (int i = 0; i < NeoRegion.SIZE; i++) {
+                for (int j = 0; j < NeoRegion.SIZE; j++) {
+                    val neoChunk = region.getChunk(i, j);
+                    for (int y = 0; y < 16; y++) {
+                        val cm = neoChunk.chunkMeshes[y * 2];
+                        if (cm == null || cm.gpuStatus != GPUStatus.SENT)
+                            continue;
+
+                        cm.addNormalStats(total);
+                        totalHidden += cm.getHiddenPolygonsRemoved();
+                        if (neoChunk.x == chunkX && y == chunkY && neoChunk.z == chunkZ) {
+                            cm.addNormalStats(local);
+                            localHidden += cm.getHiddenPolygonsRemoved();
+                        }
+                    }
+                }
+            }
+        }
+
+        val localSum = Arrays.stream(local).sum();
+        val totalSum = Arrays.stream(total).sum();
+        List<String> text = new ArrayList<>();
+        text.add("Opaque polygons per normal, chunk (" + chunkX + ", " + chunkY + ", " + chunkZ + ") / all loaded:");
+        long[] localByKind = new long[3];
+        long[] totalByKind = new long[3];
+        for (val normal : normals) {
+            val kind = normal == PolygonNormal.NONE ? 0 : normal.isAxisAligned() ? 1 : 2;
+            localByKind[kind] += local[normal.ordinal()];
+            totalByKind[kind] += total[normal.ordinal()];
+            if (total[normal.ordinal()] != 0) {
+                text.add(normal + ": " + formatShare(local[normal.ordinal()], localSum) + " / " + formatShare(total[normal.ordinal()], totalSum));
+            }
+        }
+        text.add("Unculled: " + formatShare(localByKind[0], localSum) + " / " + formatShare(totalByKind[0], totalSum)
+                 + ", axes: " + formatShare(localByKind[1], localSum) + " / " + formatShare(totalByKind[1], totalSum)
+                 + ", cones: " + formatShare(localByKind[2], localSum) + " / " + formatShare(totalByKind[2], totalSum));
+        if (Config.cullHiddenFaces) {
+            text.add("Hidden polygons removed: " + localHidden + " / " + totalHidden);
+        }
+        return text;
+    }
+
+    private static String formatShare(long count, long sum) {
+        return sum == 0 ? "-" : String.format("%.1f%%", count * 100.0 / sum);
+    }
+
     private int getShaderProgram(int pass) {
         return ((forceRenderFog || isFogEnabled()) ? shaderProgramsFog : shaderProgramsNoFog)[pass];
     }
 
+    /** @return The uniform locations of the program {@link #getShaderProgram(int)} returns. */
+    private ShaderUniforms getUniforms(int pass) {
+        return ((forceRenderFog || isFogEnabled()) ? uniformsFog : uniformsNoFog)[pass];
+    }
+
+    /**
+     * The locations of the uniforms of a shader program that aren't in a uniform block, looked up once when it's
+     * linked.
+     */
+    private static class ShaderUniforms {
+        final int playerHandLight;
+
+        ShaderUniforms(int program) {
+            playerHandLight = glGetUniformLocation(program, "playerHandLight");
+        }
+    }
+
     private boolean isFogEnabled() {
         switch (Config.renderFog) {
             case TRUE:
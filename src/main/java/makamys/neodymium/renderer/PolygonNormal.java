@@ -1,34 +1,83 @@
 package makamys.neodymium.renderer;
 
+import makamys.neodymium.config.Config;
 import org.lwjgl.util.vector.Vector3f;
 
+/**
+ * The direction a polygon faces in. Besides the six axes, polygons that face in between them are put in a cone that's
+ * described by the sign of each component of their normal, so they can still be culled conservatively.
+ */
 public enum PolygonNormal {
-    NONE, POSITIVE_X, NEGATIVE_X, POSITIVE_Y, NEGATIVE_Y, POSITIVE_Z, NEGATIVE_Z;
+    NONE(0, 0, 0), POSITIVE_X(1, 0, 0), NEGATIVE_X(-1, 0, 0), POSITIVE_Y(0, 1, 0), NEGATIVE_Y(0, -1, 0), POSITIVE_Z(0, 0, 1), NEGATIVE_Z(0, 0, -1),
+
+    POSITIVE_X_POSITIVE_Y(1, 1, 0), POSITIVE_X_NEGATIVE_Y(1, -1, 0), NEGATIVE_X_POSITIVE_Y(-1, 1, 0), NEGATIVE_X_NEGATIVE_Y(-1, -1, 0),
+    POSITIVE_X_POSITIVE_Z(1, 0, 1), POSITIVE_X_NEGATIVE_Z(1, 0, -1), NEGATIVE_X_POSITIVE_Z(-1, 0, 1), NEGATIVE_X_NEGATIVE_Z(-1, 0, -1),
+    POSITIVE_Y_POSITIVE_Z(0, 1, 1), POSITIVE_Y_NEGATIVE_Z(0, 1, -1), NEGATIVE_Y_POSITIVE_Z(0, -1, 1), NEGATIVE_Y_NEGATIVE_Z(0, -1, -1),
+
+    POSITIVE_X_POSITIVE_Y_POSITIVE_Z(1, 1, 1), POSITIVE_X_POSITIVE_Y_NEGATIVE_Z(1, 1, -1), POSITIVE_X_NEGATIVE_Y_POSITIVE_Z(1, -1, 1), POSITIVE_X_NEGATIVE_Y_NEGATIVE_Z(1, -1, -1),
+    NEGATIVE_X_POSITIVE_Y_POSITIVE_Z(-1, 1, 1), NEGATIVE_X_POSITIVE_Y_NEGATIVE_Z(-1, 1, -1), NEGATIVE_X_NEGATIVE_Y_POSITIVE_Z(-1, -1, 1), NEGATIVE_X_NEGATIVE_Y_NEGATIVE_Z(-1, -1, -1);
+
+    private static final PolygonNormal[] BY_SIGNS = new PolygonNormal[27];
+
+    private static int cachedTolerance = -1;
+    private static float cachedToleranceSin;
+    private static float cachedToleranceLean;
+
+    public final int signX, signY, signZ;
+
+    static {
+        for(PolygonNormal normal : values()) {
+            BY_SIGNS[signIndex(normal.signX, normal.signY, normal.signZ)] = normal;
+        }
+    }
+
+    PolygonNormal(int signX, int signY, int signZ) {
+        this.signX = signX;
+        this.signY = signY;
+        this.signZ = signZ;
+    }
+
+    /** @return Whether this is one of the six axes. */
+    public boolean isAxisAligned() {
+        return Math.abs(signX) + Math.abs(signY) + Math.abs(signZ) == 1;
+    }
 
     public static PolygonNormal fromVector(Vector3f normal) {
-        if(normal.getX() == 0f) {
-            if(normal.getY() == 0f) {
-                if(normal.getZ() > 0) {
-                    return POSITIVE_Z;
-                } else if(normal.getZ() < 0) {
-                    return NEGATIVE_Z;
-                }
-            } else if(normal.getZ() == 0f) {
-                if(normal.getY() > 0) {
-                    return POSITIVE_Y;
-                } else if(normal.getY() < 0) {
-                    return NEGATIVE_Y;
-                }
-            }
-        } else if(normal.getY() == 0f) {
-            if(normal.getZ() == 0f) {
-                if(normal.getX() > 0) {
-                    return POSITIVE_X;
-                } else if(normal.getX() < 0) {
-                    return NEGATIVE_X;
-                }
-            }
+        // Components that only tilt the normal by a tiny angle are treated as zero
+        float epsilon = normal.length() * toleranceSin();
+        return BY_SIGNS[signIndex(sign(normal.getX(), epsilon), sign(normal.getY(), epsilon), sign(normal.getZ(), epsilon))];
+    }
+
+    private static int sign(float component, float epsilon) {
+        return component > epsilon ? 1 : component < -epsilon ? -1 : 0;
+    }
+
+    private static int signIndex(int signX, int signY, int signZ) {
+        return (signX + 1) * 9 + (signY + 1) * 3 + (signZ + 1);
+    }
+
+    /**
+     * @return How far a normal that was classified as one of the axes may lean towards each of the other two, per unit
+     * along its axis. Both of the other components can be up to the sine of the tolerance, which leaves the one along
+     * the axis no smaller than {@code sqrt(1 - 2 sin^2)}.
+     */
+    public static float toleranceLean() {
+        updateTolerance();
+        return cachedToleranceLean;
+    }
+
+    private static float toleranceSin() {
+        updateTolerance();
+        return cachedToleranceSin;
+    }
+
+    private static void updateTolerance() {
+        int tolerance = Config.normalTolerance;
+        if(tolerance != cachedTolerance) {
+            double sin = Math.sin(Math.toRadians(tolerance / 10.0));
+            cachedToleranceSin = (float)sin;
+            cachedToleranceLean = (float)(sin / Math.sqrt(1 - 2 * sin * sin));
+            cachedTolerance = tolerance;
         }
-        return NONE;
     }
 }
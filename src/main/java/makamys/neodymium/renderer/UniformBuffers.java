@@ -0,0 +1,150 @@
+package makamys.neodymium.renderer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.BufferUtils;
+
+import lombok.val;
+
+/**
+ * The uniform buffers of the chunk shader. The per-frame state goes in one std140 block that's shared by all programs,
+ * and only gets uploaded when its contents change. The render offset of each region gets a slot of its own in a second buffer, which is
+ * bound to the region block before the region is drawn.
+ * <p>
+ * The region buffer is re-specified as a whole each time the offsets change. If the GPU is still drawing with the old
+ * ones, the driver can give the buffer new storage instead of waiting for it to finish.
+ */
+public class UniformBuffers {
+    public static final int FRAME_BINDING = 0;
+    public static final int REGION_BINDING = 1;
+
+    /** The size of the FrameState block in chunk.vert, with std140 layout. */
+    private static final int FRAME_BLOCK_SIZE = 240;
+    /** The size of the RegionState block in chunk.vert, with std140 layout. */
+    private static final int REGION_BLOCK_SIZE = 16;
+    private static final int MIN_REGIONS = 64;
+
+    private final int frameBuffer;
+    private final ByteBuffer frameData = BufferUtils.createByteBuffer(FRAME_BLOCK_SIZE);
+    /** What the frame buffer holds, or null if nothing has been uploaded to it yet. */
+    private ByteBuffer uploadedFrameData;
+
+    private final int regionBuffer;
+    /** The distance between two region slots, which has to be a multiple of the offset alignment of the driver. */
+    private final int regionStride;
+    private int regionCapacity;
+    private ByteBuffer regionData;
+
+    public UniformBuffers() {
+        val alignment = glGetInteger(GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT);
+        regionStride = Math.max(alignment, REGION_BLOCK_SIZE + (alignment - REGION_BLOCK_SIZE % alignment) % alignment);
+
+        frameBuffer = glGenBuffers();
+        glBindBuffer(GL_UNIFORM_BUFFER, frameBuffer);
+        glBufferData(GL_UNIFORM_BUFFER, FRAME_BLOCK_SIZE, GL_DYNAMIC_DRAW);
+
+        regionBuffer = glGenBuffers();
+        allocateRegions(MIN_REGIONS);
+        glBindBuffer(GL_UNIFORM_BUFFER, GL_ZERO);
+    }
+
+    /** Connects the uniform blocks of a newly linked program to the binding points of the buffers. */
+    public static void bindBlocks(int program) {
+        val frameIndex = glGetUniformBlockIndex(program, "FrameState");
+        if (frameIndex != GL_INVALID_INDEX) {
+            glUniformBlockBinding(program, frameIndex, FRAME_BINDING);
+        }
+        val regionIndex = glGetUniformBlockIndex(program, "RegionState");
+        if (regionIndex != GL_INVALID_INDEX) {
+            glUniformBlockBinding(program, regionIndex, REGION_BINDING);
+        }
+    }
+
+    public void uploadFrame(FloatBuffer modelView, FloatBuffer proj, FloatBuffer projInv, IntBuffer viewport,
+                            FloatBuffer fogColor, FloatBuffer fogStartEnd, int fogMode, float fogDensity) {
+        for (int i = 0; i < 16; i++) {
+            frameData.putFloat(i * 4, modelView.get(i));
+            frameData.putFloat(64 + i * 4, proj.get(i));
+            frameData.putFloat(128 + i * 4, projInv.get(i));
+        }
+        for (int i = 0; i < 4; i++) {
+            frameData.putFloat(192 + i * 4, viewport.get(i));
+            frameData.putFloat(208 + i * 4, fogColor.get(i));
+        }
+        frameData.putFloat(224, fogStartEnd.get(0));
+        frameData.putFloat(228, fogStartEnd.get(1));
+        frameData.putInt(232, fogMode);
+        frameData.putFloat(236, fogDensity);
+
+        // Both passes of a frame usually use the same values, but the eyes of anaglyph 3D don't
+        if (frameData.equals(uploadedFrameData))
+            return;
+
+        if (uploadedFrameData == null) {
+            uploadedFrameData = BufferUtils.createByteBuffer(FRAME_BLOCK_SIZE);
+        }
+        uploadedFrameData.clear();
+        uploadedFrameData.put(frameData.duplicate());
+        uploadedFrameData.clear();
+
+        glBindBuffer(GL_UNIFORM_BUFFER, frameBuffer);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, frameData);
+        glBindBuffer(GL_UNIFORM_BUFFER, GL_ZERO);
+    }
+
+    /** Starts writing the region offsets of a new frame, for up to {@code regions} regions. */
+    public void beginRegions(int regions) {
+        if (regions > regionCapacity) {
+            glBindBuffer(GL_UNIFORM_BUFFER, regionBuffer);
+            allocateRegions(Math.max(regions, regionCapacity * 2));
+            glBindBuffer(GL_UNIFORM_BUFFER, GL_ZERO);
+        }
+        regionData.clear();
+    }
+
+    public void putRegion(int index, float offsetX, float offsetY, float offsetZ) {
+        val base = index * regionStride;
+        regionData.putFloat(base, offsetX);
+        regionData.putFloat(base + 4, offsetY);
+        regionData.putFloat(base + 8, offsetZ);
+    }
+
+    /** Uploads the offsets of the first {@code regions} regions. */
+    public void endRegions(int regions) {
+        if (regions == 0)
+            return;
+
+        // The whole capacity, so the slots of regions that get loaded before the next update stay in range
+        glBindBuffer(GL_UNIFORM_BUFFER, regionBuffer);
+        glBufferData(GL_UNIFORM_BUFFER, regionData, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, GL_ZERO);
+    }
+
+    /** Binds the frame block. Has to be done before drawing, since something else may have used the binding point. */
+    public void bindFrame() {
+        glBindBufferBase(GL_UNIFORM_BUFFER, FRAME_BINDING, frameBuffer);
+    }
+
+    public void bindRegion(int index) {
+        glBindBufferRange(GL_UNIFORM_BUFFER, REGION_BINDING, regionBuffer, (long) index * regionStride, REGION_BLOCK_SIZE);
+    }
+
+    public void destroy() {
+        glDeleteBuffers(frameBuffer);
+        glDeleteBuffers(regionBuffer);
+    }
+
+    /** Expects the region buffer to be bound. */
+    private void allocateRegions(int regions) {
+        regionCapacity = regions;
+        regionData = BufferUtils.createByteBuffer(regions * regionStride);
+        glBufferData(GL_UNIFORM_BUFFER, (long) regions * regionStride, GL_DYNAMIC_DRAW);
+    }
+}
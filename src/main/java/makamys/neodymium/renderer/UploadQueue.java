@@ -0,0 +1,129 @@
+package makamys.neodymium.renderer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import lombok.val;
+import makamys.neodymium.config.Config;
+
+/**
+ * Holds meshes that are waiting to be uploaded to the GPU, so a burst of chunk updates gets spread over several frames
+ * instead of being uploaded all at once. Meshes in view are uploaded first, and the nearest ones first among those.
+ */
+public class UploadQueue {
+    private static final long MEGABYTE = 1024 * 1024L;
+    private static final long RATE_UPDATE_INTERVAL = 1_000_000_000L;
+    /** The number of frames after which the priorities are recalculated even if the camera stayed in its chunk. */
+    private static final int REPRIORITIZE_INTERVAL = 10;
+
+    private static final Comparator<Entry> PRIORITY_COMPARATOR = Comparator.comparing((Entry e) -> !e.inView).thenComparingDouble(e -> e.distSq);
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(PRIORITY_COMPARATOR);
+    /** The newest entry of each queued mesh. Older entries of the same mesh get skipped. */
+    private final Map<ChunkMesh, Entry> latest = new IdentityHashMap<>();
+    private final List<Entry> scratch = new ArrayList<>();
+
+    private int lastCameraX = Integer.MIN_VALUE, lastCameraY, lastCameraZ;
+    private int framesSinceReprioritize;
+
+    private long bytesUploaded;
+    private long lastRateUpdate;
+    private long bytesPerSecond;
+
+    public void add(ChunkMesh mesh, double eyeX, double eyeY, double eyeZ) {
+        val previous = latest.get(mesh);
+        if (previous != null && previous.generation == mesh.getGeneration())
+            return;
+
+        val entry = new Entry(mesh);
+        entry.updatePriority(eyeX, eyeY, eyeZ);
+        latest.put(mesh, entry);
+        queue.add(entry);
+    }
+
+    /**
+     * Uploads meshes until the per-frame budget is used up. At least one mesh gets uploaded per call, however big it
+     * is. Meshes that were destroyed or rebuilt while they were waiting are dropped without being uploaded.
+     */
+    public void drain(NeoRenderer renderer, double eyeX, double eyeY, double eyeZ) {
+        reprioritizeIfNeeded(eyeX, eyeY, eyeZ);
+
+        val budget = Config.uploadMegabytesPerFrame == 0 ? Long.MAX_VALUE : Config.uploadMegabytesPerFrame * MEGABYTE;
+        long uploaded = 0;
+        while (uploaded < budget && !queue.isEmpty()) {
+            val entry = queue.poll();
+            val mesh = entry.mesh;
+            if (latest.get(mesh) != entry)
+                continue;
+            latest.remove(mesh);
+
+            if (mesh.isDestroyed() || mesh.getGeneration() != entry.generation)
+                continue;
+
+            uploaded += mesh.bufferSize();
+            renderer.uploadMeshToGPU(mesh);
+        }
+        bytesUploaded += uploaded;
+
+        val t = System.nanoTime();
+        if (t - lastRateUpdate > RATE_UPDATE_INTERVAL) {
+            bytesPerSecond = lastRateUpdate == 0 ? 0 : bytesUploaded * 1_000_000_000L / (t - lastRateUpdate);
+            bytesUploaded = 0;
+            lastRateUpdate = t;
+        }
+    }
+
+    public int size() {
+        return latest.size();
+    }
+
+    public String debugText() {
+        return "Upload queue: " + size() + " (" + (bytesPerSecond / MEGABYTE) + "MB/s)";
+    }
+
+    private void reprioritizeIfNeeded(double eyeX, double eyeY, double eyeZ) {
+        val cameraX = (int) Math.floor(eyeX) >> 4;
+        val cameraY = (int) Math.floor(eyeY) >> 4;
+        val cameraZ = (int) Math.floor(eyeZ) >> 4;
+        val moved = cameraX != lastCameraX || cameraY != lastCameraY || cameraZ != lastCameraZ;
+        if (queue.isEmpty() || (!moved && ++framesSinceReprioritize < REPRIORITIZE_INTERVAL))
+            return;
+
+        lastCameraX = cameraX;
+        lastCameraY = cameraY;
+        lastCameraZ = cameraZ;
+        framesSinceReprioritize = 0;
+
+        scratch.addAll(queue);
+        queue.clear();
+        for (val entry : scratch) {
+            if (latest.get(entry.mesh) == entry) {
+                entry.updatePriority(eyeX, eyeY, eyeZ);
+                queue.add(entry);
+            }
+        }
+        scratch.clear();
+    }
+
+    private static class Entry {
+        private final ChunkMesh mesh;
+        private final int generation;
+        private boolean inView;
+        private double distSq;
+
+        private Entry(ChunkMesh mesh) {
+            this.mesh = mesh;
+            this.generation = mesh.getGeneration();
+        }
+
+        private void updatePriority(double eyeX, double eyeY, double eyeZ) {
+            val wr = mesh.wr;
+            inView = wr != null && wr.isInFrustum && mesh.visible;
+            distSq = mesh.distSq(eyeX / 16.0, eyeY / 16.0, eyeZ / 16.0);
+        }
+    }
+}
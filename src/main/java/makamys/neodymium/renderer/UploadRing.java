@@ -0,0 +1,218 @@
+package makamys.neodymium.renderer;
+
+import static makamys.neodymium.Constants.LOGGER;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import org.lwjgl.opengl.ARBBufferStorage;
+import org.lwjgl.opengl.GLContext;
+import org.lwjgl.opengl.GLSync;
+
+import lombok.val;
+import makamys.neodymium.Compat;
+import makamys.neodymium.config.Config;
+
+/**
+ * A persistently mapped staging buffer that mesh data gets copied into on the CPU, and then from there into its VBO by
+ * the GPU. Space is handed out round-robin. Each frame's writes get a fence, and a region is only written again once
+ * the GPU has passed the fence of the copies that read it. The ring never waits for the GPU: if it's full and none of
+ * its fences have signalled yet, the upload goes through glBufferSubData instead.
+ * <p>
+ * Only used if {@link Config#persistentUploadRing} is enabled and buffer storage is supported, see
+ * {@link #get()}.
+ */
+public class UploadRing {
+    private static final int MEGABYTE = 1024 * 1024;
+    private static final int MIN_SIZE = 8 * MEGABYTE;
+    private static final int MAX_SIZE = 256 * MEGABYTE;
+    private static final int UNLIMITED_BUDGET_SIZE = 64 * MEGABYTE;
+
+    private static UploadRing instance;
+    private static boolean failed;
+
+    private final int buffer;
+    private final ByteBuffer mapped;
+    private final int capacity;
+
+    private int head;
+    private int used;
+    /** Bytes written since the last fence. */
+    private int unfencedBytes;
+    private final ArrayDeque<Fence> fences = new ArrayDeque<>();
+
+    private UploadRing(int buffer, ByteBuffer mapped, int capacity) {
+        this.buffer = buffer;
+        this.mapped = mapped;
+        this.capacity = capacity;
+    }
+
+    /** @return The ring, or null if it's disabled or couldn't be created. */
+    public static UploadRing get() {
+        if (!Config.persistentUploadRing || !Compat.isBufferStorageSupported() || failed)
+            return null;
+
+        if (instance == null) {
+            instance = create();
+            failed = instance == null;
+        }
+        return instance;
+    }
+
+    /** Fences the writes of this frame, and lets go of the regions the GPU is done reading. */
+    public static void endFrame() {
+        if (instance == null)
+            return;
+
+        instance.onEndFrame();
+    }
+
+    public static void destroy() {
+        if (instance != null) {
+            instance.destroyImpl();
+            instance = null;
+        }
+        failed = false;
+    }
+
+    void onEndFrame() {
+        fenceWrites();
+        retire();
+    }
+
+    /**
+     * Copies the bytes to the given offset of the VBO through the ring.
+     * @return False if the data doesn't fit in the ring right now, in which case it has to be uploaded another way.
+     */
+    public boolean upload(ByteBuffer bytes, int vbo, long offset) {
+        val size = bytes.remaining();
+        val ringOffset = reserve(size);
+        if (ringOffset == -1)
+            return false;
+
+        mapped.clear();
+        mapped.position(ringOffset);
+        mapped.put(bytes.duplicate());
+
+        glBindBuffer(GL_COPY_READ_BUFFER, buffer);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, vbo);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, ringOffset, offset, size);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, GL_ZERO);
+        glBindBuffer(GL_COPY_READ_BUFFER, GL_ZERO);
+        return true;
+    }
+
+    private int reserve(int size) {
+        if (size > capacity)
+            return -1;
+
+        // Allocations don't wrap around, the end of the ring gets skipped if the data doesn't fit there. The skipped
+        // part may be empty if the previous allocation ended right at the end of the ring.
+        val wrap = head + size > capacity;
+        val skip = wrap ? capacity - head : 0;
+        while (capacity - used < skip + size) {
+            if (!retireOldest())
+                return -1;
+        }
+        if (wrap) {
+            head = 0;
+        }
+        val offset = head;
+        head += size;
+        used += skip + size;
+        unfencedBytes += skip + size;
+        return offset;
+    }
+
+    private void fenceWrites() {
+        if (unfencedBytes == 0)
+            return;
+
+        fences.add(new Fence(glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0), unfencedBytes));
+        unfencedBytes = 0;
+    }
+
+    /** Releases the regions of the fences the GPU has already passed, without waiting for any. */
+    private void retire() {
+        while (!fences.isEmpty()) {
+            val fence = fences.peek();
+            val result = glClientWaitSync(fence.sync, GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+            if (result == GL_TIMEOUT_EXPIRED || result == GL_WAIT_FAILED)
+                return;
+
+            glDeleteSync(fence.sync);
+            fences.poll();
+            used -= fence.bytes;
+        }
+    }
+
+    /** @return Whether any space was freed up. */
+    private boolean retireOldest() {
+        fenceWrites();
+        if (fences.isEmpty())
+            return false;
+
+        val before = used;
+        retire();
+        return used < before;
+    }
+
+    void destroyImpl() {
+        for (val fence : fences) {
+            glDeleteSync(fence.sync);
+        }
+        fences.clear();
+
+        glBindBuffer(GL_COPY_READ_BUFFER, buffer);
+        glUnmapBuffer(GL_COPY_READ_BUFFER);
+        glBindBuffer(GL_COPY_READ_BUFFER, GL_ZERO);
+        glDeleteBuffers(buffer);
+    }
+
+    private static UploadRing create() {
+        val budget = Config.uploadMegabytesPerFrame;
+        // Room for the uploads of about three frames, since that's how far ahead of the GPU the driver usually gets
+        return create(budget == 0 ? UNLIMITED_BUDGET_SIZE : Math.max(MIN_SIZE, (int) Math.min((long) budget * MEGABYTE * 3, MAX_SIZE)));
+    }
+
+    /** @return A ring of the given size, or null if it couldn't be created. */
+    static UploadRing create(int size) {
+        val flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+
+        while (glGetError() != GL_NO_ERROR) ;
+
+        val buffer = glGenBuffers();
+        glBindBuffer(GL_COPY_READ_BUFFER, buffer);
+        if (GLContext.getCapabilities().OpenGL44) {
+            glBufferStorage(GL_COPY_READ_BUFFER, size, flags);
+        } else {
+            ARBBufferStorage.glBufferStorage(GL_COPY_READ_BUFFER, size, flags);
+        }
+        val mapped = glMapBufferRange(GL_COPY_READ_BUFFER, 0, size, flags, null);
+        glBindBuffer(GL_COPY_READ_BUFFER, GL_ZERO);
+
+        if (glGetError() != GL_NO_ERROR || mapped == null) {
+            LOGGER.warn("Failed to create persistently mapped upload buffer, falling back to glBufferSubData");
+            glDeleteBuffers(buffer);
+            return null;
+        }
+        LOGGER.debug("Created " + size / MEGABYTE + "MB persistently mapped upload buffer");
+        return new UploadRing(buffer, mapped, size);
+    }
+
+    private static class Fence {
+        private final GLSync sync;
+        private final int bytes;
+
+        private Fence(GLSync sync, int bytes) {
+            this.sync = sync;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -20,6 +20,10 @@ public class AttributeSet {
         return stride;
     }
 
+    public int size() {
+        return attributes.size();
+    }
+
     public void enable() {
         int offset = 0;
         for (int i = 0, size = attributes.size(); i < size; i++) {
@@ -3,7 +3,9 @@ package makamys.neodymium.renderer.compat;
 import makamys.neodymium.renderer.ChunkMesh;
 import makamys.neodymium.renderer.NeoRenderer;
 import makamys.neodymium.renderer.attribs.AttributeSet;
-import makamys.neodymium.util.BufferWriter;
+import makamys.neodymium.util.BulkBufferWriter;
+
+import java.util.Map;
 
 public interface RenderUtil {
     int POLYGON_OFFSET_XPOS = 0;
@@ -15,7 +17,7 @@ public interface RenderUtil {
     /**
      * @implSpec These needs to be kept in sync with the attributes in {@link NeoRenderer#init()}
      */
-    void writeMeshPolygonToBuffer(int[] meshPolygonBuffer, int polygonOffset, BufferWriter out, int expectedStride, int verticesPerPolygon);
+    void writeMeshPolygonToBuffer(int[] meshPolygonBuffer, int polygonOffset, BulkBufferWriter out, int expectedStride, int verticesPerPolygon);
 
     int vertexSizeInTessellator();
 
@@ -31,4 +33,6 @@ public interface RenderUtil {
     default void applyVertexAttributes(AttributeSet attributes) {
         attributes.enable();
     }
+
+    default void addShaderDefines(Map<String, String> defines) {}
 }
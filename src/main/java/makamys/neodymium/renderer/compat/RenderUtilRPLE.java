@@ -6,7 +6,7 @@ import lombok.val;
 import makamys.neodymium.config.Config;
 import makamys.neodymium.renderer.ChunkMesh;
 import makamys.neodymium.renderer.attribs.AttributeSet;
-import makamys.neodymium.util.BufferWriter;
+import makamys.neodymium.util.BulkBufferWriter;
 
 import static makamys.neodymium.renderer.MeshPolygon.DEFAULT_BRIGHTNESS;
 import static makamys.neodymium.renderer.MeshPolygon.DEFAULT_COLOR;
@@ -15,7 +15,7 @@ import static org.lwjgl.opengl.GL11.GL_SHORT;
 import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
 import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
 
-@NoArgsConstructor(access = AccessLevel.PRIVATE)
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
 public class RenderUtilRPLE implements RenderUtil {
     public static final RenderUtilRPLE INSTANCE = new RenderUtilRPLE();
 
@@ -51,30 +51,24 @@ public class RenderUtilRPLE implements RenderUtil {
     }
 
     @Override
-    public void writeMeshPolygonToBuffer(int[] meshPolygonBuffer, int polygonOffset, BufferWriter out, int expectedStride, int verticesPerPolygon) {
+    public void writeMeshPolygonToBuffer(int[] meshPolygonBuffer, int polygonOffset, BulkBufferWriter out, int expectedStride, int verticesPerPolygon) {
         val vertexSize = vertexSizeInPolygonBuffer();
+        if(!Config.shortUV) {
+            // The vertex layout is the same as in the polygon buffer, so the whole polygon can be copied at once
+            out.writeInts(meshPolygonBuffer, polygonOffset, vertexSize * verticesPerPolygon);
+            assert out.position() % expectedStride == 0;
+            return;
+        }
         for(int vi = 0; vi < verticesPerPolygon; vi++) {
             int offset = polygonOffset + vi * vertexSize;
-            out.writeFloat(Float.intBitsToFloat(meshPolygonBuffer[offset + POLYGON_OFFSET_XPOS]));
-            out.writeFloat(Float.intBitsToFloat(meshPolygonBuffer[offset + POLYGON_OFFSET_YPOS]));
-            out.writeFloat(Float.intBitsToFloat(meshPolygonBuffer[offset + POLYGON_OFFSET_ZPOS]));
+            out.writeInts(meshPolygonBuffer, offset + POLYGON_OFFSET_XPOS, 3);
 
             float u = Float.intBitsToFloat(meshPolygonBuffer[offset + POLYGON_OFFSET_U]);
             float v = Float.intBitsToFloat(meshPolygonBuffer[offset + POLYGON_OFFSET_V]);
+            out.writeShort((short)(Math.round(u * 32768f)));
+            out.writeShort((short)(Math.round(v * 32768f)));
 
-            if(Config.shortUV) {
-                out.writeShort((short)(Math.round(u * 32768f)));
-                out.writeShort((short)(Math.round(v * 32768f)));
-            } else {
-                out.writeFloat(u);
-                out.writeFloat(v);
-            }
-
-            out.writeInt(meshPolygonBuffer[offset + POLYGON_OFFSET_C]);
-
-            out.writeInt(meshPolygonBuffer[offset + POLYGON_OFFSET_BR]);
-            out.writeInt(meshPolygonBuffer[offset + POLYGON_OFFSET_BG]);
-            out.writeInt(meshPolygonBuffer[offset + POLYGON_OFFSET_BB]);
+            out.writeInts(meshPolygonBuffer, offset + POLYGON_OFFSET_C, vertexSize - POLYGON_OFFSET_C);
 
             assert out.position() % expectedStride == 0;
         }
@@ -0,0 +1,65 @@
+package makamys.neodymium.renderer.compat;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.val;
+import makamys.neodymium.renderer.attribs.AttributeSet;
+import makamys.neodymium.util.BulkBufferWriter;
+
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.GL_SHORT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+/**
+ * Same polygon data as {@link RenderUtilRPLE}, but written in a 28 byte vertex format:
+ * <pre>
+ * position     4 ushorts 8 bytes offset  0 (the 4th one is padding)
+ * texture      2 ushorts 4 bytes offset  8
+ * color        4 ubytes  4 bytes offset 12
+ * brightness_R 2 shorts  4 bytes offset 16
+ * brightness_G 2 shorts  4 bytes offset 20
+ * brightness_B 2 shorts  4 bytes offset 24
+ * </pre>
+ * RPLE's brightness values use the whole short range, so unlike {@link RenderUtilVanillaCompact} they are kept as is.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class RenderUtilRPLECompact extends RenderUtilRPLE {
+    public static final RenderUtilRPLECompact INSTANCE = new RenderUtilRPLECompact();
+
+    @Override
+    public void writeMeshPolygonToBuffer(int[] meshPolygonBuffer, int polygonOffset, BulkBufferWriter out, int expectedStride, int verticesPerPolygon) {
+        val vertexSize = vertexSizeInPolygonBuffer();
+        for(int vi = 0; vi < verticesPerPolygon; vi++) {
+            int offset = polygonOffset + vi * vertexSize;
+            RenderUtilVanillaCompact.writePosition(meshPolygonBuffer, offset, out);
+            out.writeShort((short) 0);
+
+            RenderUtilVanillaCompact.writeShortUV(meshPolygonBuffer, offset + POLYGON_OFFSET_U, out);
+
+            out.writeInt(meshPolygonBuffer[offset + POLYGON_OFFSET_C]);
+
+            out.writeInt(meshPolygonBuffer[offset + POLYGON_OFFSET_BR]);
+            out.writeInt(meshPolygonBuffer[offset + POLYGON_OFFSET_BG]);
+            out.writeInt(meshPolygonBuffer[offset + POLYGON_OFFSET_BB]);
+
+            assert out.position() % expectedStride == 0;
+        }
+    }
+
+    @Override
+    public void initVertexAttributes(AttributeSet attributes) {
+        attributes.addAttribute("POS", 4, 2, GL_UNSIGNED_SHORT);
+        attributes.addAttribute("TEXTURE", 2, 2, GL_UNSIGNED_SHORT);
+        attributes.addAttribute("COLOR", 4, 1, GL_UNSIGNED_BYTE);
+        attributes.addAttribute("BRIGHTNESS_RED", 2, 2, GL_SHORT);
+        attributes.addAttribute("BRIGHTNESS_GREEN", 2, 2, GL_SHORT);
+        attributes.addAttribute("BRIGHTNESS_BLUE", 2, 2, GL_SHORT);
+    }
+
+    @Override
+    public void addShaderDefines(Map<String, String> defines) {
+        RenderUtilVanillaCompact.addCompactDefines(defines);
+    }
+}
@@ -5,7 +5,7 @@ import lombok.NoArgsConstructor;
 import lombok.val;
 import makamys.neodymium.renderer.ChunkMesh;
 import makamys.neodymium.renderer.attribs.AttributeSet;
-import makamys.neodymium.util.BufferWriter;
+import makamys.neodymium.util.BulkBufferWriter;
 import net.minecraft.client.renderer.OpenGlHelper;
 import org.lwjgl.opengl.ARBVertexShader;
 
@@ -60,16 +60,11 @@ public class RenderUtilShaders implements RenderUtil {
     }
 
     @Override
-    public void writeMeshPolygonToBuffer(int[] meshPolygonBuffer, int polygonOffset, BufferWriter out, int expectedStride, int verticesPerPolygon) {
-        val vertexSize = vertexSizeInPolygonBuffer();
-        for(int vi = 0; vi < verticesPerPolygon; vi++) {
-            int offset = polygonOffset + vi * vertexSize;
-            for (int i = 0; i < vertexSize; i++) {
-                out.writeInt(meshPolygonBuffer[offset + i]);
-            }
-
-            assert out.position() % expectedStride == 0;
-        }
+    public void writeMeshPolygonToBuffer(int[] meshPolygonBuffer, int polygonOffset, BulkBufferWriter out, int expectedStride, int verticesPerPolygon) {
+        // The vertex layout is the same as in the polygon buffer, so the whole polygon can be copied at once
+        out.writeInts(meshPolygonBuffer, polygonOffset, vertexSizeInPolygonBuffer() * verticesPerPolygon);
+
+        assert out.position() % expectedStride == 0;
     }
 
     @Override
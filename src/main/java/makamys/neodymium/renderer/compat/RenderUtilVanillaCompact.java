@@ -0,0 +1,87 @@
+package makamys.neodymium.renderer.compat;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.val;
+import makamys.neodymium.renderer.attribs.AttributeSet;
+import makamys.neodymium.util.BulkBufferWriter;
+
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+/**
+ * Same polygon data as {@link RenderUtilVanilla}, but written in a 16 byte vertex format:
+ * <pre>
+ * position   3 ushorts 6 bytes offset  0
+ * brightness 2 ubytes  2 bytes offset  6
+ * texture    2 ushorts 4 bytes offset  8
+ * color      4 ubytes  4 bytes offset 12
+ * </pre>
+ * Positions are relative to the region, stored in fixed point (see {@link #encodePosition(float)}), and decoded in
+ * the vertex shader. Vanilla brightness components never exceed 255, so they fit in a byte without loss.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class RenderUtilVanillaCompact extends RenderUtilVanilla {
+    public static final RenderUtilVanillaCompact INSTANCE = new RenderUtilVanillaCompact();
+
+    public static final int POSITION_SCALE = 32;
+    /** Lets vertices stick out of the region a bit without underflowing. */
+    public static final int POSITION_BIAS = 8;
+
+    @Override
+    public void writeMeshPolygonToBuffer(int[] meshPolygonBuffer, int polygonOffset, BulkBufferWriter out, int expectedStride, int verticesPerPolygon) {
+        val vertexSize = vertexSizeInPolygonBuffer();
+        for(int vi = 0; vi < verticesPerPolygon; vi++) {
+            int offset = polygonOffset + vi * vertexSize;
+            writePosition(meshPolygonBuffer, offset, out);
+
+            int brightness = meshPolygonBuffer[offset + POLYGON_OFFSET_B];
+            out.writeByte((byte) brightness);
+            out.writeByte((byte) (brightness >>> 16));
+
+            writeShortUV(meshPolygonBuffer, offset + POLYGON_OFFSET_U, out);
+
+            out.writeInt(meshPolygonBuffer[offset + POLYGON_OFFSET_C]);
+
+            assert out.position() % expectedStride == 0;
+        }
+    }
+
+    @Override
+    public void initVertexAttributes(AttributeSet attributes) {
+        attributes.addAttribute("POS", 3, 2, GL_UNSIGNED_SHORT);
+        attributes.addAttribute("BRIGHTNESS", 2, 1, GL_UNSIGNED_BYTE);
+        attributes.addAttribute("TEXTURE", 2, 2, GL_UNSIGNED_SHORT);
+        attributes.addAttribute("COLOR", 4, 1, GL_UNSIGNED_BYTE);
+    }
+
+    @Override
+    public void addShaderDefines(Map<String, String> defines) {
+        addCompactDefines(defines);
+    }
+
+    static void writePosition(int[] meshPolygonBuffer, int offset, BulkBufferWriter out) {
+        out.writeShort(encodePosition(Float.intBitsToFloat(meshPolygonBuffer[offset + POLYGON_OFFSET_XPOS])));
+        out.writeShort(encodePosition(Float.intBitsToFloat(meshPolygonBuffer[offset + POLYGON_OFFSET_YPOS])));
+        out.writeShort(encodePosition(Float.intBitsToFloat(meshPolygonBuffer[offset + POLYGON_OFFSET_ZPOS])));
+    }
+
+    static void writeShortUV(int[] meshPolygonBuffer, int offset, BulkBufferWriter out) {
+        out.writeShort((short) Math.round(Float.intBitsToFloat(meshPolygonBuffer[offset]) * 32768f));
+        out.writeShort((short) Math.round(Float.intBitsToFloat(meshPolygonBuffer[offset + 1]) * 32768f));
+    }
+
+    static short encodePosition(float position) {
+        int fixed = Math.round((position + POSITION_BIAS) * POSITION_SCALE);
+        return (short) Math.max(0, Math.min(0xFFFF, fixed));
+    }
+
+    static void addCompactDefines(Map<String, String> defines) {
+        defines.put("COMPACT_POSITION", "");
+        defines.put("POSITION_SCALE", POSITION_SCALE + ".0");
+        defines.put("POSITION_BIAS", POSITION_BIAS + ".0");
+        defines.put("SHORT_UV", "");
+    }
+}
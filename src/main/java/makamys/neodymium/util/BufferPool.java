@@ -0,0 +1,181 @@
+package makamys.neodymium.util;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lwjgl.BufferUtils;
+
+/**
+ * A pool of direct byte buffers, bucketed into power-of-two size classes. Buffers have to be handed back with
+ * {@link #release(ByteBuffer)} once they are no longer used, so their native memory can be reused right away instead
+ * of waiting for the garbage collector to free it.
+ */
+public class BufferPool {
+    private static final int MIN_CLASS_SHIFT = 12;
+    private static final int MAX_CLASS_SHIFT = 24;
+    /** Handed out for empty meshes. It can't hold anything, so sharing it is safe. */
+    private static final ByteBuffer EMPTY = BufferUtils.createByteBuffer(0);
+
+    private final SizeClass[] classes = new SizeClass[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+    private final long maxFreeBytes;
+    private final AtomicLong freeBytes = new AtomicLong();
+    private final AtomicInteger unpooled = new AtomicInteger();
+    /** An int view of each pooled buffer, made along with the buffer so writers don't need a new one for each use. */
+    private final Map<ByteBuffer, IntBuffer> intViews = new IdentityHashMap<>();
+
+    /**
+     * @param maxFreeBytes The amount of memory the released buffers are allowed to take up in total. Buffers released
+     *                     beyond this are left to the garbage collector.
+     */
+    public BufferPool(long maxFreeBytes) {
+        this.maxFreeBytes = maxFreeBytes;
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass(1 << (MIN_CLASS_SHIFT + i));
+        }
+    }
+
+    /** Returns a native-order buffer with a position of 0 and a limit of {@code size}. */
+    public ByteBuffer allocate(int size) {
+        if (size == 0)
+            return EMPTY;
+
+        SizeClass sizeClass = classFor(size);
+        ByteBuffer buffer;
+        if (sizeClass == null) {
+            unpooled.incrementAndGet();
+            buffer = BufferUtils.createByteBuffer(size);
+        } else {
+            buffer = sizeClass.poll();
+            if (buffer != null) {
+                freeBytes.addAndGet(-buffer.capacity());
+            } else {
+                buffer = BufferUtils.createByteBuffer(sizeClass.size);
+                // Duplicates are always big endian, the order has to be carried over by hand
+                IntBuffer intView = buffer.duplicate().order(buffer.order()).asIntBuffer();
+                synchronized (intViews) {
+                    intViews.put(buffer, intView);
+                }
+            }
+            sizeClass.inUse.incrementAndGet();
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == EMPTY)
+            return;
+
+        SizeClass sizeClass = classFor(buffer.capacity());
+        if (sizeClass == null || sizeClass.size != buffer.capacity()) {
+            unpooled.decrementAndGet();
+            return;
+        }
+        sizeClass.inUse.decrementAndGet();
+        if (freeBytes.addAndGet(buffer.capacity()) > maxFreeBytes) {
+            freeBytes.addAndGet(-buffer.capacity());
+            synchronized (intViews) {
+                intViews.remove(buffer);
+            }
+            return;
+        }
+        sizeClass.offer(buffer);
+    }
+
+    /**
+     * @return An int view of the whole of a buffer handed out by this pool, or null if the buffer isn't pooled. Its
+     * position is left wherever it was last used.
+     */
+    public IntBuffer intView(ByteBuffer buffer) {
+        synchronized (intViews) {
+            return intViews.get(buffer);
+        }
+    }
+
+    /** Lets go of the free buffers. The ones in use are still taken back when released. */
+    public void clear() {
+        for (SizeClass sizeClass : classes) {
+            ByteBuffer buffer;
+            while ((buffer = sizeClass.poll()) != null) {
+                freeBytes.addAndGet(-buffer.capacity());
+                synchronized (intViews) {
+                    intViews.remove(buffer);
+                }
+            }
+        }
+    }
+
+    /** The capacity of the pooled buffers that are handed out and not released yet. */
+    public long getUsedBytes() {
+        long usedBytes = 0;
+        for (SizeClass sizeClass : classes) {
+            usedBytes += (long) sizeClass.inUse.get() * sizeClass.size;
+        }
+        return usedBytes;
+    }
+
+    /** The capacity of the released buffers that are kept for reuse. */
+    public long getFreeBytes() {
+        return freeBytes.get();
+    }
+
+    /** The number of buffers handed out that were too big to pool and aren't released yet. */
+    public int getUnpooledCount() {
+        return unpooled.get();
+    }
+
+    private SizeClass classFor(int size) {
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+        return shift <= MAX_CLASS_SHIFT ? classes[shift - MIN_CLASS_SHIFT] : null;
+    }
+
+    public List<String> debugText() {
+        StringBuilder occupancy = new StringBuilder();
+        for (SizeClass sizeClass : classes) {
+            int inUse = sizeClass.inUse.get();
+            int free = sizeClass.freeCount();
+            if (inUse != 0 || free != 0) {
+                if (occupancy.length() != 0) {
+                    occupancy.append(' ');
+                }
+                occupancy.append(sizeClass.size / 1024).append("K:").append(inUse).append('/').append(free);
+            }
+        }
+        List<String> text = new ArrayList<>();
+        text.add("Buffer pool: " + getUsedBytes() / 1024 / 1024 + "MB used, " + getFreeBytes() / 1024 / 1024 + "MB free, " + getUnpooledCount() + " unpooled");
+        if (occupancy.length() != 0) {
+            text.add(occupancy.toString());
+        }
+        return text;
+    }
+
+    private static class SizeClass {
+        private final int size;
+        private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        private SizeClass(int size) {
+            this.size = size;
+        }
+
+        private synchronized ByteBuffer poll() {
+            return free.pollFirst();
+        }
+
+        private synchronized void offer(ByteBuffer buffer) {
+            free.addFirst(buffer);
+        }
+
+        private synchronized int freeCount() {
+            return free.size();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package makamys.neodymium.util;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Writes vertex data into a byte buffer using absolute puts. The write position is kept in a field and only handed to
+ * the buffer on {@link #flush()}, and whole int[] ranges can be copied in one go with {@link #writeInts}.
+ * <p>
+ * A writer can be re-targeted with {@link #wrap(ByteBuffer)}, so one instance can serve any number of buffers.
+ */
+public class BulkBufferWriter {
+
+    private ByteBuffer buf;
+    private IntBuffer intView;
+    private int position;
+
+    public BulkBufferWriter() {
+    }
+
+    public BulkBufferWriter(ByteBuffer buf) {
+        wrap(buf);
+    }
+
+    /** Continues writing at the current position of the given buffer. */
+    public BulkBufferWriter wrap(ByteBuffer buf) {
+        if(buf != this.buf) {
+            this.buf = buf;
+            intView = null;
+        }
+        position = buf.position();
+        return this;
+    }
+
+    /**
+     * Like {@link #wrap(ByteBuffer)}, but with an int view of the whole buffer that was made beforehand, so the writer
+     * doesn't have to create one. Null makes the writer create its own like usual.
+     */
+    public BulkBufferWriter wrap(ByteBuffer buf, IntBuffer intView) {
+        wrap(buf);
+        if(intView != null) {
+            this.intView = intView;
+        }
+        return this;
+    }
+
+    /** Rewinds the writer and the buffer to the start, so the buffer can be filled again. */
+    public void reset() {
+        buf.clear();
+        position = 0;
+    }
+
+    /** Moves the position of the buffer to where the writer is. */
+    public void flush() {
+        buf.position(position);
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public void writeInt(int x) {
+        buf.putInt(position, x);
+        position += 4;
+    }
+
+    public void writeFloat(float x) {
+        buf.putFloat(position, x);
+        position += 4;
+    }
+
+    public void writeShort(short s) {
+        buf.putShort(position, s);
+        position += 2;
+    }
+
+    public void writeByte(byte x) {
+        buf.put(position, x);
+        position += 1;
+    }
+
+    /** Writes {@code length} ints of {@code src} starting at {@code offset}. */
+    public void writeInts(int[] src, int offset, int length) {
+        if((position & 3) == 0) {
+            intView().position(position >> 2);
+            intView.put(src, offset, length);
+            position += length * 4;
+        } else {
+            for(int i = 0; i < length; i++) {
+                writeInt(src[offset + i]);
+            }
+        }
+    }
+
+    public void putInt(int index, int x) {
+        buf.putInt(index, x);
+    }
+
+    public void putFloat(int index, float x) {
+        buf.putFloat(index, x);
+    }
+
+    public void putShort(int index, short s) {
+        buf.putShort(index, s);
+    }
+
+    public void putByte(int index, byte x) {
+        buf.put(index, x);
+    }
+
+    private IntBuffer intView() {
+        if(intView == null) {
+            // Duplicates are always big endian, the order has to be carried over by hand
+            ByteBuffer whole = buf.duplicate().order(buf.order());
+            whole.clear();
+            intView = whole.asIntBuffer();
+        }
+        return intView;
+    }
+
+}
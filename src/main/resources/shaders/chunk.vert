@@ -10,16 +10,25 @@ layout (location = ATTRIB_BRIGHTNESS) in vec2 aBTexCoord;
 #endif
 layout (location = ATTRIB_COLOR) in vec4 aColor;
 
-uniform mat4 modelView;
-uniform mat4 proj;
-uniform mat4 projInv;
-uniform vec4 viewport;
-uniform vec4 fogColor;
-uniform vec2 fogStartEnd;
-uniform int fogMode;
-uniform float fogDensity;
+// Keep in sync with UniformBuffers
+layout (std140) uniform FrameState {
+    mat4 modelView;
+    mat4 proj;
+    mat4 projInv;
+    vec4 viewport;
+    vec4 fogColor;
+    vec2 fogStartEnd;
+    int fogMode;
+    float fogDensity;
+};
 
-uniform vec3 renderOffset;
+#ifdef MULTI_DRAW_INDIRECT
+layout (location = ATTRIB_REGION_OFFSET) in vec3 aRegionOffset;
+#else
+layout (std140) uniform RegionState {
+    vec3 renderOffset;
+};
+#endif
 
 out vec2 TexCoord;
 #ifdef RPLE
@@ -41,7 +50,15 @@ out float FogFactor; // -1 means: disable fog
 
 void main()
 {
-    vec4 untransformedPos = (vec4(aPos, 1.0) + vec4(renderOffset.x, renderOffset.y + 0.12, renderOffset.z, 0));
+#ifdef COMPACT_POSITION
+    vec3 pos = aPos / POSITION_SCALE - POSITION_BIAS;
+#else
+    vec3 pos = aPos;
+#endif
+#ifdef MULTI_DRAW_INDIRECT
+    vec3 renderOffset = aRegionOffset;
+#endif
+    vec4 untransformedPos = (vec4(pos, 1.0) + vec4(renderOffset.x, renderOffset.y + 0.12, renderOffset.z, 0));
     gl_Position = proj * modelView * untransformedPos;
 	TexCoord = aTexCoord;
 #ifdef RPLE
@@ -0,0 +1,83 @@
+package makamys.neodymium.renderer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.sun.management.ThreadMXBean;
+
+import makamys.neodymium.config.Config;
+import makamys.neodymium.renderer.compat.RenderUtilVanilla;
+
+/**
+ * Once the capture buffers have grown to fit and the mesh and buffer pools are filled, capturing and finishing a chunk
+ * shouldn't allocate anything on the heap. Chunk updates run all the time while moving around, so anything they
+ * allocate adds up to steady garbage collector work.
+ * <p>
+ * The pools are shared, so they're emptied before and after each test. Otherwise what they hold would depend on the
+ * tests that ran before.
+ */
+class CaptureAllocationTest {
+    private static final int WARMUP_CHUNKS = 2000;
+    private static final int MEASURED_CHUNKS = 500;
+
+    private CaptureHarness.SavedState savedState;
+
+    @BeforeEach
+    void setUp() {
+        savedState = CaptureHarness.saveState();
+        ChunkMesh.clearPools();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ChunkMesh.clearPools();
+        savedState.restore();
+    }
+
+    @ParameterizedTest(name = "fusedCapture={0}")
+    @ValueSource(booleans = {false, true})
+    void steadyStateCaptureDoesNotAllocate(boolean fusedCapture) throws ReflectiveOperationException {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        CaptureHarness harness = new CaptureHarness();
+        Config.indexedQuads = false;
+        Config.shortUV = false;
+        Config.fusedCapture = fusedCapture;
+        harness.use(RenderUtilVanilla.INSTANCE);
+        List<CaptureHarness.Batch> chunk = harness.randomChunk(new Random(1), 400);
+
+        for (int i = 0; i < WARMUP_CHUNKS; i++) {
+            captureAndDestroy(harness, chunk);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        // Reading the counter may allocate by itself, so that much gets subtracted
+        long overhead = threads.getThreadAllocatedBytes(threadId);
+        overhead = threads.getThreadAllocatedBytes(threadId) - overhead;
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CHUNKS; i++) {
+            captureAndDestroy(harness, chunk);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(0, allocated, "bytes allocated over " + MEASURED_CHUNKS + " chunks");
+    }
+
+    private static void captureAndDestroy(CaptureHarness harness, List<CaptureHarness.Batch> chunk) {
+        for (int pass = 0; pass < 2; pass++) {
+            harness.capture(chunk, pass).destroy();
+        }
+    }
+}
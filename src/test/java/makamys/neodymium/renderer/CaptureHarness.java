@@ -0,0 +1,187 @@
+package makamys.neodymium.renderer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.lwjgl.opengl.GL11;
+
+import makamys.neodymium.Neodymium;
+import makamys.neodymium.config.Config;
+import makamys.neodymium.config.Config;
+import makamys.neodymium.renderer.attribs.AttributeSet;
+import makamys.neodymium.renderer.compat.RenderUtil;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldRenderer;
+
+/**
+ * Sets up just enough of the renderer to build chunk meshes out of made up tessellator data, without a world or an
+ * OpenGL context. The renderer and the world renderer are created without running their constructors, since those
+ * set up GL objects. Only the vertex attributes of the renderer get filled in, they decide the stride of the meshes.
+ * <p>
+ * This changes static state of the mod, so tests using it should {@link #saveState()} before and restore it after.
+ */
+final class CaptureHarness {
+    private final WorldRenderer wr;
+    private final Tessellator tessellator = Tessellator.instance;
+
+    /** The static state the harness and the tests using it change. Restoring it also drops the fake renderer. */
+    static SavedState saveState() {
+        return new SavedState();
+    }
+
+    CaptureHarness() throws ReflectiveOperationException {
+        Config.asyncMeshFinalization = false;
+        Config.cullHiddenFaces = false;
+        if (Neodymium.renderer == null) {
+            Neodymium.renderer = Uninitialized.allocate(NeoRenderer.class);
+        }
+        wr = Uninitialized.allocate(WorldRenderer.class);
+        wr.posX = 32;
+        wr.posY = 64;
+        wr.posZ = -48;
+    }
+
+    /** Switches to the vertex layout of the given util. Set the config options that affect the layout first. */
+    void use(RenderUtil util) {
+        Neodymium.util = util;
+        AttributeSet attributes = new AttributeSet();
+        util.initVertexAttributes(attributes);
+        Neodymium.renderer.attributes = attributes;
+    }
+
+    /**
+     * Makes up the tessellator data of a chunk in the layout of the current util: a few batches of quads, most of them
+     * block faces, some bent or degenerate, and a batch of triangles.
+     */
+    List<Batch> randomChunk(Random random, int quadsPerBatch) {
+        List<Batch> batches = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batches.add(randomBatch(random, GL11.GL_QUADS, quadsPerBatch));
+        }
+        batches.add(randomBatch(random, GL11.GL_TRIANGLES, quadsPerBatch / 4));
+        return batches;
+    }
+
+    private Batch randomBatch(Random random, int drawMode, int polygons) {
+        int vertexSize = Neodymium.util.vertexSizeInTessellator();
+        int verticesPerPolygon = drawMode == GL11.GL_QUADS ? 4 : 3;
+        int[] raw = new int[polygons * verticesPerPolygon * vertexSize];
+        float[][] corners = new float[4][];
+        for (int polygon = 0; polygon < polygons; polygon++) {
+            double kind = random.nextDouble();
+            if (kind < 0.7) {
+                blockFace(random, corners);
+            } else if (kind < 0.95) {
+                for (int i = 0; i < 4; i++) {
+                    corners[i] = new float[]{random.nextFloat() * 16, random.nextFloat() * 16, random.nextFloat() * 16};
+                }
+            } else {
+                float[] point = {random.nextFloat() * 16, random.nextFloat() * 16, random.nextFloat() * 16};
+                for (int i = 0; i < 4; i++) {
+                    corners[i] = point;
+                }
+            }
+            for (int vertex = 0; vertex < verticesPerPolygon; vertex++) {
+                int offset = (polygon * verticesPerPolygon + vertex) * vertexSize;
+                for (int i = 0; i < vertexSize; i++) {
+                    // Everything but the color and brightness gets read as floats by some layout
+                    raw[offset + i] = i == 5 || i == 6 ? random.nextInt() : Float.floatToRawIntBits(random.nextFloat());
+                }
+                for (int axis = 0; axis < 3; axis++) {
+                    raw[offset + axis] = Float.floatToRawIntBits(corners[vertex][axis]);
+                }
+            }
+        }
+        return new Batch(raw, polygons * verticesPerPolygon, drawMode);
+    }
+
+    private static void blockFace(Random random, float[][] corners) {
+        int axis = random.nextInt(3);
+        boolean positive = random.nextBoolean();
+        float[] min = {random.nextInt(16), random.nextInt(16), random.nextInt(16)};
+        if (positive) {
+            min[axis]++;
+        }
+        int u = (axis + 1) % 3;
+        int v = (axis + 2) % 3;
+        for (int i = 0; i < 4; i++) {
+            // Counter-clockwise when seen from the side the face points to
+            int corner = positive ? i : 3 - i;
+            corners[i] = min.clone();
+            corners[i][u] += corner == 1 || corner == 2 ? 1 : 0;
+            corners[i][v] += corner >= 2 ? 1 : 0;
+        }
+    }
+
+    /** Captures the batches into a new mesh and finishes it. */
+    ChunkMesh capture(List<Batch> batches, int pass) {
+        ChunkMesh mesh = ChunkMesh.obtain(wr, pass);
+        for (int i = 0; i < batches.size(); i++) {
+            batches.get(i).load(tessellator, wr);
+            mesh.addTessellatorData(tessellator);
+        }
+        mesh.finishConstruction();
+        return mesh;
+    }
+
+    static byte[] bytes(ChunkMesh mesh) {
+        ByteBuffer buffer = mesh.buffer.duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static int[] subMeshStart(ChunkMesh mesh) {
+        return mesh.subMeshStart.clone();
+    }
+
+    static final class SavedState {
+        private final NeoRenderer renderer = Neodymium.renderer;
+        private final RenderUtil util = Neodymium.util;
+        private final boolean asyncMeshFinalization = Config.asyncMeshFinalization;
+        private final boolean cullHiddenFaces = Config.cullHiddenFaces;
+        private final boolean indexedQuads = Config.indexedQuads;
+        private final boolean shortUV = Config.shortUV;
+        private final boolean fusedCapture = Config.fusedCapture;
+
+        private SavedState() {}
+
+        void restore() {
+            Neodymium.renderer = renderer;
+            Neodymium.util = util;
+            Config.asyncMeshFinalization = asyncMeshFinalization;
+            Config.cullHiddenFaces = cullHiddenFaces;
+            Config.indexedQuads = indexedQuads;
+            Config.shortUV = shortUV;
+            Config.fusedCapture = fusedCapture;
+        }
+    }
+
+    /** The state of the tessellator when it would be drawn. */
+    static final class Batch {
+        private final int[] rawBuffer;
+        private final int vertexCount;
+        private final int drawMode;
+
+        private Batch(int[] rawBuffer, int vertexCount, int drawMode) {
+            this.rawBuffer = rawBuffer;
+            this.vertexCount = vertexCount;
+            this.drawMode = drawMode;
+        }
+
+        private void load(Tessellator t, WorldRenderer wr) {
+            t.rawBuffer = rawBuffer;
+            t.vertexCount = vertexCount;
+            t.drawMode = drawMode;
+            t.hasTexture = true;
+            t.hasBrightness = true;
+            t.hasColor = true;
+            t.hasNormals = false;
+            t.xOffset = -wr.posX;
+            t.yOffset = -wr.posY;
+            t.zOffset = -wr.posZ;
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package makamys.neodymium.renderer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import makamys.neodymium.util.MeshSizes;
+
+class FreeListAllocatorTest {
+    private static final long KILOBYTE = 1024;
+    private static final long MEGABYTE = 1024 * KILOBYTE;
+
+    @Test
+    void picksTheSmallestBlockThatFits() {
+        FreeListAllocator allocator = new FreeListAllocator(1000);
+        long a = allocator.allocate(100);
+        long b = allocator.allocate(300);
+        long c = allocator.allocate(50);
+        long d = allocator.allocate(200);
+        allocator.allocate(350);
+        allocator.free(b, 300);
+        allocator.free(d, 200);
+
+        assertEquals(d, allocator.allocate(150));
+        assertEquals(b, allocator.allocate(250));
+        assertEquals(2, allocator.getFreeBlockCount());
+        assertEquals(0, a);
+        assertEquals(400, c);
+    }
+
+    @Test
+    void coalescesNeighbours() {
+        FreeListAllocator allocator = new FreeListAllocator(300);
+        long a = allocator.allocate(100);
+        long b = allocator.allocate(100);
+        long c = allocator.allocate(100);
+
+        allocator.free(a, 100);
+        allocator.free(c, 100);
+        assertEquals(2, allocator.getFreeBlockCount());
+
+        allocator.free(b, 100);
+        assertEquals(1, allocator.getFreeBlockCount());
+        assertEquals(300, allocator.getLargestFreeBlock());
+        assertEquals(0, allocator.getFragmentation());
+    }
+
+    @Test
+    void allocatesAtAGivenOffset() {
+        FreeListAllocator allocator = new FreeListAllocator(100, 500);
+        assertTrue(allocator.allocateAt(200, 100));
+        assertFalse(allocator.allocateAt(250, 100));
+        assertEquals(100, allocator.allocate(100));
+        assertEquals(300, allocator.allocate(200));
+        assertEquals(-1, allocator.allocate(1));
+    }
+
+    @Test
+    void allocatesBelowALimit() {
+        FreeListAllocator allocator = new FreeListAllocator(1000);
+        long a = allocator.allocate(100);
+        allocator.allocate(100);
+        allocator.free(a, 100);
+
+        assertEquals(-1, allocator.allocateBelow(150, 300));
+        assertEquals(0, allocator.allocateBelow(50, 100));
+        assertEquals(200, allocator.allocateBelow(100, 1000));
+    }
+
+    @Test
+    void growMergesWithTheFreeTail() {
+        FreeListAllocator allocator = new FreeListAllocator(100);
+        allocator.allocate(60);
+        allocator.grow(200);
+
+        assertEquals(1, allocator.getFreeBlockCount());
+        assertEquals(140, allocator.getLargestFreeBlock());
+        assertEquals(60, allocator.getHighWaterMark());
+        assertTrue(allocator.contains(199));
+        assertFalse(allocator.contains(200));
+    }
+
+    /** Replays random allocations and frees, and checks the allocator against a list of the live ranges. */
+    @Test
+    void randomTraceKeepsRangesDisjoint() {
+        Random random = new Random(1);
+        long capacity = 16 * MEGABYTE;
+        FreeListAllocator allocator = new FreeListAllocator(capacity);
+        TreeMap<Long, Long> live = new TreeMap<>();
+        long liveBytes = 0;
+
+        for (int step = 0; step < 200_000; step++) {
+            if (live.isEmpty() || random.nextInt(100) < 55) {
+                long size = MeshSizes.next(random);
+                long offset = allocator.allocate(size);
+                if (offset == -1) {
+                    assertTrue(allocator.getLargestFreeBlock() < size);
+                    continue;
+                }
+                Map.Entry<Long, Long> before = live.floorEntry(offset);
+                Map.Entry<Long, Long> after = live.ceilingEntry(offset);
+                assertTrue(before == null || before.getKey() + before.getValue() <= offset);
+                assertTrue(after == null || offset + size <= after.getKey());
+                assertTrue(offset >= 0 && offset + size <= capacity);
+                live.put(offset, size);
+                liveBytes += size;
+            } else {
+                Map.Entry<Long, Long> victim = randomEntry(live, random);
+                allocator.free(victim.getKey(), victim.getValue());
+                live.remove(victim.getKey());
+                liveBytes -= victim.getValue();
+            }
+            assertEquals(liveBytes, allocator.getUsedBytes());
+        }
+
+        for (Map.Entry<Long, Long> entry : live.entrySet()) {
+            allocator.free(entry.getKey(), entry.getValue());
+        }
+        assertEquals(1, allocator.getFreeBlockCount());
+        assertEquals(capacity, allocator.getFreeBytes());
+    }
+
+    /**
+     * Replays the same chunk rebuild trace against the free list and against a model of the cursor scan the memory
+     * managers used before, and compares how many managers each of them needs to hold the meshes, and how often a
+     * mesh didn't fit in a manager that had enough free bytes for it. A rebuild frees the old mesh of a chunk and
+     * uploads a new one of a slightly different size.
+     */
+    @Test
+    void needsNoMoreManagersThanTheCursorScan(TestReporter reporter) {
+        long capacity = 64 * MEGABYTE;
+        int chunks = 2000;
+        int rebuilds = 200_000;
+
+        SimulationResult freeList = simulate(new FreeListPlacement(capacity), chunks, rebuilds);
+        SimulationResult cursorScan = simulate(new CursorScanPlacement(capacity), chunks, rebuilds);
+
+        reporter.publishEntry("free list", freeList.toString());
+        reporter.publishEntry("cursor scan", cursorScan.toString());
+
+        String results = "free list: " + freeList + "; cursor scan: " + cursorScan;
+        assertTrue(freeList.managers <= cursorScan.managers, results);
+        assertTrue(freeList.failedPlacements <= cursorScan.failedPlacements, results);
+    }
+
+    private static SimulationResult simulate(Placement prototype, int chunks, int rebuilds) {
+        Random random = new Random(2);
+        List<Placement> managers = new ArrayList<>();
+        managers.add(prototype);
+        long[] sizes = new long[chunks];
+        long[][] allocations = new long[chunks][];
+        Placement[] owners = new Placement[chunks];
+        int failedPlacements = 0;
+
+        for (int i = 0; i < chunks + rebuilds; i++) {
+            int chunk = i < chunks ? i : random.nextInt(chunks);
+            if (owners[chunk] != null) {
+                owners[chunk].free(allocations[chunk]);
+                sizes[chunk] = Math.max(KILOBYTE, sizes[chunk] + (random.nextInt(17) - 8) * KILOBYTE);
+            } else {
+                sizes[chunk] = MeshSizes.next(random);
+            }
+
+            owners[chunk] = null;
+            for (Placement manager : managers) {
+                long[] allocation = manager.allocate(sizes[chunk]);
+                if (allocation != null) {
+                    allocations[chunk] = allocation;
+                    owners[chunk] = manager;
+                    break;
+                }
+                if (manager.freeBytes() >= sizes[chunk]) {
+                    failedPlacements++;
+                }
+            }
+            if (owners[chunk] == null) {
+                Placement manager = prototype.create();
+                managers.add(manager);
+                allocations[chunk] = manager.allocate(sizes[chunk]);
+                owners[chunk] = manager;
+            }
+
+            if (i % 8 == 7) {
+                // About as many uploads as a frame sees during fast flight
+                for (Placement manager : managers) {
+                    manager.endFrame();
+                }
+            }
+        }
+
+        double fragmentation = 0;
+        for (Placement manager : managers) {
+            fragmentation += manager.fragmentation();
+        }
+        return new SimulationResult(managers.size(), failedPlacements, fragmentation / managers.size());
+    }
+
+    private static Map.Entry<Long, Long> randomEntry(TreeMap<Long, Long> map, Random random) {
+        Map.Entry<Long, Long> entry = map.ceilingEntry(map.firstKey() + (long) (random.nextDouble() * (map.lastKey() - map.firstKey() + 1)));
+        return entry != null ? entry : map.firstEntry();
+    }
+
+    private static class SimulationResult {
+        final int managers;
+        final int failedPlacements;
+        final double fragmentation;
+
+        SimulationResult(int managers, int failedPlacements, double fragmentation) {
+            this.managers = managers;
+            this.failedPlacements = failedPlacements;
+            this.fragmentation = fragmentation;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d managers, %d placements failed despite enough free bytes, %.4f fragmentation at the end", managers, failedPlacements, fragmentation);
+        }
+    }
+
+    private interface Placement {
+        /** @return The offset and size of the allocation, or null if the manager is full. */
+        long[] allocate(long size);
+
+        void free(long[] allocation);
+
+        void endFrame();
+
+        long freeBytes();
+
+        double fragmentation();
+
+        Placement create();
+    }
+
+    private static class FreeListPlacement implements Placement {
+        private final FreeListAllocator allocator;
+
+        FreeListPlacement(long capacity) {
+            allocator = new FreeListAllocator(capacity);
+        }
+
+        @Override
+        public long[] allocate(long size) {
+            long offset = allocator.allocate(size);
+            return offset == -1 ? null : new long[] {offset, size};
+        }
+
+        @Override
+        public void free(long[] allocation) {
+            allocator.free(allocation[0], allocation[1]);
+        }
+
+        @Override
+        public void endFrame() {
+        }
+
+        @Override
+        public long freeBytes() {
+            return allocator.getFreeBytes();
+        }
+
+        @Override
+        public double fragmentation() {
+            return allocator.getFragmentation();
+        }
+
+        @Override
+        public Placement create() {
+            return new FreeListPlacement(allocator.getCapacity());
+        }
+    }
+
+    /**
+     * The placement of the old GPUMemoryManager: a mesh goes either into the gap after the mesh at the cursor or after
+     * the last mesh, and the space of deleted meshes is only reclaimed by the incremental GC, which moves up to 32
+     * meshes towards the start of the buffer per frame.
+     */
+    private static class CursorScanPlacement implements Placement {
+        private static final int GC_MOVES_PER_FRAME = 32;
+
+        private final long capacity;
+        private final List<long[]> meshes = new ArrayList<>();
+        private final Map<Long, long[]> byOffset = new TreeMap<>();
+        private int nextMesh;
+
+        CursorScanPlacement(long capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public long[] allocate(long size) {
+            if (end() + size >= capacity)
+                return null;
+
+            int insertIndex = -1;
+            long base = -1;
+            if (!meshes.isEmpty()) {
+                if (nextMesh < meshes.size() - 1) {
+                    long[] meshA = meshes.get(nextMesh);
+                    long[] meshB = null;
+                    for (int i = nextMesh + 1; i < meshes.size(); i++) {
+                        if (!isDeleted(meshes.get(i))) {
+                            meshB = meshes.get(i);
+                            break;
+                        }
+                    }
+                    if (meshB != null && meshB[0] - (meshA[0] + meshA[1]) >= size) {
+                        base = meshA[0] + meshA[1];
+                        insertIndex = nextMesh + 1;
+                    }
+                }
+                if (base == -1) {
+                    base = end();
+                }
+            }
+            if (base == -1) {
+                base = 0;
+            }
+
+            // offset, size, deleted
+            long[] mesh = {base, size, 0};
+            if (insertIndex == -1) {
+                meshes.add(mesh);
+            } else {
+                meshes.add(insertIndex, mesh);
+                nextMesh = insertIndex;
+            }
+            byOffset.put(base, mesh);
+            return mesh;
+        }
+
+        @Override
+        public void free(long[] allocation) {
+            byOffset.remove(allocation[0]);
+            allocation[2] = 1;
+        }
+
+        @Override
+        public void endFrame() {
+            int moved = 0;
+            int checksLeft = meshes.size();
+            while (moved < GC_MOVES_PER_FRAME && checksLeft > 0) {
+                checksLeft--;
+                nextMesh++;
+                if (nextMesh >= meshes.size()) {
+                    nextMesh = 0;
+                }
+                long[] mesh = meshes.get(nextMesh);
+                if (!isDeleted(mesh)) {
+                    long[] previous = nextMesh == 0 ? null : meshes.get(nextMesh - 1);
+                    long offset = previous == null ? 0 : previous[0] + previous[1];
+                    if (mesh[0] != offset) {
+                        byOffset.remove(mesh[0]);
+                        mesh[0] = offset;
+                        byOffset.put(offset, mesh);
+                        moved++;
+                    }
+                } else {
+                    meshes.remove(nextMesh);
+                    if (nextMesh > 0) {
+                        nextMesh--;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public long freeBytes() {
+            long freeBytes = capacity;
+            for (long[] mesh : byOffset.values()) {
+                freeBytes -= mesh[1];
+            }
+            return freeBytes;
+        }
+
+        @Override
+        public double fragmentation() {
+            long freeBytes = capacity;
+            long largest = 0;
+            long position = 0;
+            for (long[] mesh : byOffset.values()) {
+                largest = Math.max(largest, mesh[0] - position);
+                freeBytes -= mesh[1];
+                position = mesh[0] + mesh[1];
+            }
+            largest = Math.max(largest, capacity - position);
+            return freeBytes == 0 ? 0 : 1.0 - (double) largest / freeBytes;
+        }
+
+        @Override
+        public Placement create() {
+            return new CursorScanPlacement(capacity);
+        }
+
+        private long end() {
+            if (meshes.isEmpty())
+                return 0;
+            long[] last = meshes.get(meshes.size() - 1);
+            return last[0] + last[1];
+        }
+
+        private static boolean isDeleted(long[] mesh) {
+            return mesh[2] != 0;
+        }
+    }
+}
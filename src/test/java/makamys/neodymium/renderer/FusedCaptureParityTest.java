@@ -0,0 +1,85 @@
+package makamys.neodymium.renderer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import makamys.neodymium.config.Config;
+import makamys.neodymium.renderer.compat.RenderUtil;
+import makamys.neodymium.renderer.compat.RenderUtilRPLE;
+import makamys.neodymium.renderer.compat.RenderUtilRPLECompact;
+import makamys.neodymium.renderer.compat.RenderUtilShaderRPLE;
+import makamys.neodymium.renderer.compat.RenderUtilShaders;
+import makamys.neodymium.renderer.compat.RenderUtilVanilla;
+import makamys.neodymium.renderer.compat.RenderUtilVanillaCompact;
+
+/**
+ * Fused capture has to produce byte for byte the same mesh as buffering the polygons and encoding them afterwards, in
+ * every vertex layout. The sub-meshes of each normal have to start at the same polygons too, since culling relies on
+ * them.
+ */
+class FusedCaptureParityTest {
+    private CaptureHarness.SavedState savedState;
+
+    @BeforeEach
+    void saveState() {
+        savedState = CaptureHarness.saveState();
+    }
+
+    @AfterEach
+    void restoreState() {
+        savedState.restore();
+    }
+
+    static List<Arguments> layouts() {
+        RenderUtil[] utils = {RenderUtilVanilla.INSTANCE, RenderUtilVanillaCompact.INSTANCE, RenderUtilRPLE.INSTANCE,
+                              RenderUtilRPLECompact.INSTANCE, RenderUtilShaders.INSTANCE, RenderUtilShaderRPLE.INSTANCE};
+        List<Arguments> layouts = new ArrayList<>();
+        for (RenderUtil util : utils) {
+            for (boolean indexedQuads : new boolean[]{false, true}) {
+                for (boolean shortUV : new boolean[]{false, true}) {
+                    for (int pass = 0; pass < 2; pass++) {
+                        layouts.add(Arguments.of(Named.of(util.getClass().getSimpleName(), util), indexedQuads, shortUV, pass));
+                    }
+                }
+            }
+        }
+        return layouts;
+    }
+
+    @ParameterizedTest(name = "{0}, indexedQuads={1}, shortUV={2}, pass {3}")
+    @MethodSource("layouts")
+    void fusedCaptureMatchesBufferedCapture(RenderUtil util, boolean indexedQuads, boolean shortUV, int pass) throws ReflectiveOperationException {
+        CaptureHarness harness = new CaptureHarness();
+        Config.indexedQuads = indexedQuads;
+        Config.shortUV = shortUV;
+        harness.use(util);
+        List<CaptureHarness.Batch> chunk = harness.randomChunk(new Random(pass * 4 + (indexedQuads ? 2 : 0) + (shortUV ? 1 : 0)), 400);
+
+        Config.fusedCapture = false;
+        ChunkMesh buffered = harness.capture(chunk, pass);
+        Config.fusedCapture = true;
+        ChunkMesh fused = harness.capture(chunk, pass);
+
+        try {
+            assertTrue(buffered.polygonCount > 0);
+            assertEquals(buffered.polygonCount, fused.polygonCount);
+            assertArrayEquals(CaptureHarness.subMeshStart(buffered), CaptureHarness.subMeshStart(fused));
+            assertArrayEquals(CaptureHarness.bytes(buffered), CaptureHarness.bytes(fused));
+        } finally {
+            buffered.destroy();
+            fused.destroy();
+        }
+    }
+}
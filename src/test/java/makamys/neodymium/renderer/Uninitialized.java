@@ -0,0 +1,32 @@
+package makamys.neodymium.renderer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Creates objects without running their constructors, for the classes that set up GL objects or read the game state in
+ * theirs. The fields of such an object are all zero or null, whatever uses it has to fill in the ones it needs.
+ */
+final class Uninitialized {
+    private static final Object UNSAFE;
+    private static final Method ALLOCATE_INSTANCE;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            UNSAFE = theUnsafe.get(null);
+            ALLOCATE_INSTANCE = unsafeClass.getMethod("allocateInstance", Class.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Uninitialized() {}
+
+    @SuppressWarnings("unchecked")
+    static <T> T allocate(Class<T> clazz) throws ReflectiveOperationException {
+        return (T) ALLOCATE_INSTANCE.invoke(UNSAFE, clazz);
+    }
+}
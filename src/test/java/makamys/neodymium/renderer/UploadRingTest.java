@@ -0,0 +1,114 @@
+package makamys.neodymium.renderer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.opengl.GL11.glFinish;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glGetBufferSubData;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GLContext;
+import org.lwjgl.opengl.Pbuffer;
+import org.lwjgl.opengl.PixelFormat;
+
+/**
+ * Uploads through the ring into a real VBO and reads them back, falling back to glBufferSubData like
+ * {@link GPUMemoryManager} does whenever the ring is full and the GPU isn't done with any of it yet.
+ * <p>
+ * Needs an OpenGL context, which is made with a pbuffer. Without a display or the LWJGL natives the tests are skipped.
+ * Mesa's software renderer is enough, e.g. run under Xvfb with {@code LIBGL_ALWAYS_SOFTWARE=1} to get llvmpipe.
+ */
+class UploadRingTest {
+    private static final int MEGABYTE = 1024 * 1024;
+    private static final int RING_SIZE = 8 * MEGABYTE;
+    private static final int VBO_SIZE = 32 * MEGABYTE;
+
+    private Pbuffer context;
+    private UploadRing ring;
+    private int vbo;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        try {
+            context = new Pbuffer(1, 1, new PixelFormat(), null);
+            context.makeCurrent();
+        } catch (Exception | LinkageError e) {
+            assumeTrue(false, "No OpenGL context: " + e);
+        }
+        ContextCapabilities caps = GLContext.getCapabilities();
+        assumeTrue(caps.OpenGL44 || caps.GL_ARB_buffer_storage, "No buffer storage");
+
+        ring = UploadRing.create(RING_SIZE);
+        vbo = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferData(GL_ARRAY_BUFFER, BufferUtils.createByteBuffer(VBO_SIZE), GL_STREAM_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ring != null) {
+            ring.destroyImpl();
+        }
+        if (vbo != 0) {
+            glDeleteBuffers(vbo);
+        }
+        if (context != null) {
+            context.destroy();
+        }
+    }
+
+    @Test
+    void uploadsLandInTheVBO() {
+        assertNotNull(ring, "ring wasn't created");
+        Random random = new Random(1);
+        byte[] expected = new byte[VBO_SIZE];
+
+        // Several times the size of the ring over a few frames, so it wraps around and has to retire fences
+        for (int frame = 0; frame < 8; frame++) {
+            for (int i = 0; i < 8; i++) {
+                int size = 1 + random.nextInt(MEGABYTE);
+                int offset = random.nextInt(VBO_SIZE - size);
+                byte[] data = new byte[size];
+                random.nextBytes(data);
+                upload(data, offset);
+                System.arraycopy(data, 0, expected, offset, size);
+            }
+            ring.onEndFrame();
+        }
+
+        glFinish();
+        ByteBuffer actual = BufferUtils.createByteBuffer(VBO_SIZE);
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glGetBufferSubData(GL_ARRAY_BUFFER, 0, actual);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        byte[] actualBytes = new byte[VBO_SIZE];
+        actual.get(actualBytes);
+        assertArrayEquals(expected, actualBytes);
+    }
+
+    /** Like {@link GPUMemoryManager}, falls back to glBufferSubData if the ring can't take the data right now. */
+    private void upload(byte[] data, int offset) {
+        ByteBuffer bytes = BufferUtils.createByteBuffer(data.length);
+        bytes.put(data).flip();
+        if (!ring.upload(bytes, vbo, offset)) {
+            glBindBuffer(GL_ARRAY_BUFFER, vbo);
+            glBufferSubData(GL_ARRAY_BUFFER, offset, bytes);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package makamys.neodymium.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class BufferPoolTest {
+    private static final int KILOBYTE = 1024;
+    private static final int MEGABYTE = 1024 * KILOBYTE;
+
+    @Test
+    void roundsUpToTheSizeClass() {
+        BufferPool pool = new BufferPool(MEGABYTE);
+        ByteBuffer buffer = pool.allocate(5000);
+
+        assertEquals(8 * KILOBYTE, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(5000, buffer.limit());
+        assertEquals(ByteOrder.nativeOrder(), buffer.order());
+
+        pool.release(buffer);
+        assertSame(buffer, pool.allocate(6000));
+    }
+
+    @Test
+    void sharesOneEmptyBuffer() {
+        BufferPool pool = new BufferPool(MEGABYTE);
+        ByteBuffer a = pool.allocate(0);
+        ByteBuffer b = pool.allocate(0);
+
+        assertSame(a, b);
+        assertEquals(0, a.capacity());
+
+        pool.release(a);
+        pool.release(b);
+        assertEquals(4 * KILOBYTE, pool.allocate(1).capacity());
+        assertEquals(4 * KILOBYTE, pool.getUsedBytes());
+        assertEquals(0, pool.getFreeBytes());
+        assertEquals(0, pool.getUnpooledCount());
+    }
+
+    @Test
+    void doesNotPoolHugeBuffers() {
+        BufferPool pool = new BufferPool(64 * MEGABYTE);
+        ByteBuffer buffer = pool.allocate(32 * MEGABYTE + 1);
+        assertEquals(32 * MEGABYTE + 1, buffer.capacity());
+        assertEquals(0, pool.getUsedBytes());
+        assertEquals(1, pool.getUnpooledCount());
+
+        pool.release(buffer);
+        assertEquals(0, pool.getFreeBytes());
+        assertEquals(0, pool.getUnpooledCount());
+    }
+
+    @Test
+    void keepsAnIntViewOfPooledBuffers() {
+        BufferPool pool = new BufferPool(MEGABYTE);
+        ByteBuffer buffer = pool.allocate(100);
+        IntBuffer view = pool.intView(buffer);
+
+        assertEquals(buffer.capacity() / 4, view.capacity());
+        view.put(3, 0x12345678);
+        assertEquals(0x12345678, buffer.getInt(12));
+
+        pool.release(buffer);
+        assertSame(view, pool.intView(pool.allocate(200)));
+        assertNull(pool.intView(pool.allocate(32 * MEGABYTE + 1)));
+        assertNull(pool.intView(pool.allocate(0)));
+    }
+
+    /**
+     * Rebuilds random meshes out of a fixed set many times over, like flying through a loaded world does. Without the
+     * pool, each rebuild would leave a buffer behind for the garbage collector, which adds up to GBs here. With it,
+     * the native memory stays within a small multiple of what the live buffers take up. The pool is allowed to keep
+     * everything that's released, so none of its buffers are left for the garbage collector either.
+     */
+    @Test
+    void churnKeepsNativeMemoryBounded() {
+        int meshes = 1000;
+        int rebuilds = 100_000;
+        BufferPool pool = new BufferPool(Long.MAX_VALUE);
+        Random random = new Random(1);
+        List<ByteBuffer> live = new ArrayList<>();
+        long liveCapacity = 0;
+        long peakLiveCapacity = 0;
+        long churnedBytes = 0;
+
+        long directBefore = directMemoryUsed();
+        for (int i = 0; i < meshes + rebuilds; i++) {
+            if (i >= meshes) {
+                ByteBuffer old = live.remove(random.nextInt(live.size()));
+                liveCapacity -= old.capacity();
+                pool.release(old);
+            }
+            int size = MeshSizes.next(random);
+            ByteBuffer buffer = pool.allocate(size);
+            // Touch the memory so the test fails loudly if the pool hands out a buffer that's too small
+            buffer.put(size - 1, (byte) 1);
+            live.add(buffer);
+            liveCapacity += buffer.capacity();
+            peakLiveCapacity = Math.max(peakLiveCapacity, liveCapacity);
+            churnedBytes += size;
+
+            long directUsed = directMemoryUsed() - directBefore;
+            assertTrue(directUsed <= 2 * peakLiveCapacity,
+                       "direct memory grew to " + directUsed + " bytes with " + peakLiveCapacity + " bytes live at most");
+        }
+
+        assertTrue(churnedBytes > 50 * peakLiveCapacity);
+
+        for (ByteBuffer buffer : live) {
+            pool.release(buffer);
+        }
+        assertEquals(0, pool.getUsedBytes());
+        assertEquals(0, pool.getUnpooledCount());
+        assertTrue(pool.getFreeBytes() >= liveCapacity);
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean bean : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (bean.getName().equals("direct")) {
+                return bean.getMemoryUsed();
+            }
+        }
+        throw new IllegalStateException("No direct buffer pool");
+    }
+}
@@ -0,0 +1,15 @@
+package makamys.neodymium.util;
+
+import java.util.Random;
+
+/** Made up sizes of chunk meshes, for tests that churn through memory like chunk updates do. */
+public final class MeshSizes {
+    private static final int KILOBYTE = 1024;
+
+    private MeshSizes() {}
+
+    /** Chunk meshes are mostly small, with a long tail of dense ones: 4KB to 512KB, evenly spread on a log scale. */
+    public static int next(Random random) {
+        return (int) (4 * KILOBYTE * Math.pow(2, random.nextDouble() * 7));
+    }
+}